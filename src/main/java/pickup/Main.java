@@ -9,6 +9,7 @@ import java.util.Objects;
 import pickup.config.PickupConfig;
 import pickup.feature.*;
 import pickup.event.*;
+import pickup.tool.NmsAccess;
 /**
  * PickUp插件主类 - 只负责初始化和生命周期管理
  */
@@ -19,7 +20,7 @@ public class Main extends JavaPlugin {
     private CustomItemMerger itemMerger;
     private PickupConfig pickupConfig;
     private PickupEvent pickupEventListener; // 新增：空间索引
-    public ItemSpatialIndex itemSpatialIndex;
+    public SpatialIndex itemSpatialIndex;
     // 控制标志
     private boolean stoppedByCommand = false;
 
@@ -31,6 +32,9 @@ public class Main extends JavaPlugin {
         // 初始化配置管理器
         this.pickupConfig = new PickupConfig(this);
 
+        // 探测服务端内部访问方式（拾取延迟、NMS句柄），之后不再反射查找
+        NmsAccess.probe(getLogger());
+
         // 初始化功能模块
         initializeModules();
 
@@ -73,8 +77,8 @@ public class Main extends JavaPlugin {
         // 1. 先创建配置管理器
         this.pickupConfig = new PickupConfig(this);
 
-        // 2. 创建空间索引（必须先创建）
-        this.itemSpatialIndex = new ItemSpatialIndex(this);
+        // 2. 创建空间索引（必须先创建，后端由 index.backend 决定）
+        this.itemSpatialIndex = SpatialIndex.create(this);
 
         // 3. 创建拾取管理器（传入空间索引）
         this.pickupManager = new PickupManager(this, pickupConfig, itemSpatialIndex);
@@ -122,15 +126,19 @@ public class Main extends JavaPlugin {
      * 启动功能模块
      */
     private void enableModules() {
+        // 快照任务需先于拾取/合并任务启动，保证同一tick内它们读到最新坐标
+        if (itemSpatialIndex != null) {
+            // 登记已加载区块中现存的物品（启动、重载或重新开启后索引为空）
+            itemSpatialIndex.queueLoadedWorlds();
+            itemSpatialIndex.startSnapshotTask();
+            itemSpatialIndex.startCleanupTask(); // 启动清理任务
+        }
         if (pickupManager != null) {
             pickupManager.enable();
         }
         if (itemMerger != null && shouldRunItemMerger()) {
             itemMerger.start();
         }
-        if (itemSpatialIndex != null) {
-            itemSpatialIndex.startCleanupTask(); // 启动清理任务
-        }
     }
 
     /**
@@ -143,7 +151,9 @@ public class Main extends JavaPlugin {
         if (itemMerger != null) {
             itemMerger.stop();
         }
-        // itemSpatialIndex 不需要停止，它会自动被垃圾回收
+        if (itemSpatialIndex != null) {
+            itemSpatialIndex.stopTasks();
+        }
     }
 
     /**
@@ -176,8 +186,8 @@ public class Main extends JavaPlugin {
             this.pickupConfig = new PickupConfig(this);
         }
 
-        // 重新创建空间索引
-        this.itemSpatialIndex = new ItemSpatialIndex(this);
+        // 重新创建空间索引（按新配置选择后端，旧索引的任务已在 disableModules 中停止）
+        this.itemSpatialIndex = SpatialIndex.create(this);
 
         // 重新初始化拾取管理器
         this.pickupManager = new PickupManager(this, pickupConfig, itemSpatialIndex);
@@ -248,5 +258,6 @@ public class Main extends JavaPlugin {
     public boolean isStoppedByCommand() {return stoppedByCommand;}
     public PickupConfig getPickupConfig() {return pickupConfig;}
     public CustomItemMerger getItemMerger() {return itemMerger;}
-    public ItemSpatialIndex getItemSpatialIndex() {return this.itemSpatialIndex;}
+    public SpatialIndex getItemSpatialIndex() {return this.itemSpatialIndex;}
+    public PickupManager getPickupManager() {return pickupManager;}
 }
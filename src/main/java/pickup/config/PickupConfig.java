@@ -44,8 +44,10 @@ public class PickupConfig {
     // 配置字段
     private boolean enabled;
     private boolean playerDriven;
+    private boolean broadPhase;
     private double pickupRange;
     private boolean offhandPickupEnabled;
+    private boolean batchPickup;
     private int selfImmuneTicks;
     private boolean itemDrivenEnabled;
     private int activeDetectionTicks;
@@ -61,6 +63,8 @@ public class PickupConfig {
     private int itemMergeScanIntervalTicks;
     private double playerMinMoveDistance;
     private int playerMoveCheckIntervalTicks;
+    private int indexCellSize;
+    private String indexBackend;
 
     /**
      * 构造函数
@@ -92,6 +96,7 @@ public class PickupConfig {
         this.enabled = config.getBoolean("enabled", true);
         this.playerDriven = config.getBoolean("mode.player-driven", true);
         this.playerMoveCheckIntervalTicks = Math.max(1, config.getInt("mode.player-move-check-interval", 6));
+        this.broadPhase = config.getBoolean("mode.broad-phase", false);
         this.itemDrivenEnabled = config.getBoolean("mode.item-driven", true);
         this.activeDetectionTicks = Math.max(0, config.getInt("mode.item-active-duration", 60));
         this.pickupAttemptIntervalTicks = Math.max(1, config.getInt("mode.item-check-interval", 2));
@@ -100,6 +105,7 @@ public class PickupConfig {
         this.pickupRange = Math.max(0.1, Math.min(10.0, config.getDouble("pickup.range", 1.5)));
         this.selfImmuneTicks = Math.max(0, config.getInt("pickup.self-immune-ticks", 5));
         this.offhandPickupEnabled = config.getBoolean("pickup.offhand-pickup", false);
+        this.batchPickup = config.getBoolean("pickup.batch-pickup", false);
         this.playerMinMoveDistance = Math.max(0.0, config.getDouble("mode.player-min-move-distance", 0.25));
 
         // 延迟配置
@@ -117,6 +123,10 @@ public class PickupConfig {
         this.itemMergeActiveDurationTicks = config.getInt("custom-item-merge.active-duration-ticks", 10);
         this.itemMergeScanIntervalTicks = config.getInt("custom-item-merge.scan-interval-ticks", 2);
 
+        // 空间索引配置
+        this.indexCellSize = config.getInt("index.cell-size", 0);
+        this.indexBackend = config.getString("index.backend", "chunk-hash");
+
         // 加载完成后通知监听器配置已完全重载
         notifyListeners("__RELOAD_ALL__", null);
     }
@@ -251,12 +261,18 @@ public class PickupConfig {
     public String getValueTypeHint(String key) {
         if (key.contains("range") || key.contains("radius")) {
             return "小数 (0.1-20.0)";
+        } else if (key.equals("index.cell-size")) {
+            return "整数 (0=自动, 2/4/8/16)";
+        } else if (key.equals("index.backend")) {
+            return "字符串 (chunk-hash/grid/octree)";
         } else if (key.contains("ticks") || key.contains("interval") || key.contains("delay")) {
             return "整数 (ticks)";
         } else if (key.endsWith(".enabled") ||
                 key.contains("player-driven") ||
                 key.contains("item-driven") ||
+                key.contains("broad-phase") ||
                 key.contains("offhand-pickup") ||
+                key.contains("batch-pickup") ||
                 key.contains("send-private-message")) {
             return "布尔值 (true/false)";
         } else if (key.equals("enabled")) {
@@ -281,6 +297,9 @@ public class PickupConfig {
                 case "mode.item-driven":
                     this.itemDrivenEnabled = getBooleanValue(value);
                     break;
+                case "mode.broad-phase":
+                    this.broadPhase = getBooleanValue(value);
+                    break;
                 case "mode.item-active-duration":
                     this.activeDetectionTicks = getIntValue(value);
                     break;
@@ -293,6 +312,9 @@ public class PickupConfig {
                 case "pickup.offhand-pickup":
                     this.offhandPickupEnabled = getBooleanValue(value);
                     break;
+                case "pickup.batch-pickup":
+                    this.batchPickup = getBooleanValue(value);
+                    break;
                 case "pickup.delays.player-drop":
                     this.playerDropDelayTicks = getIntValue(value);
                     break;
@@ -326,6 +348,12 @@ public class PickupConfig {
                 case "mode.player-move-check-interval":
                     this.playerMoveCheckIntervalTicks = getIntValue(value);
                     break;
+                case "index.cell-size":
+                    this.indexCellSize = getIntValue(value);
+                    break;
+                case "index.backend":
+                    this.indexBackend = String.valueOf(value);
+                    break;
             }
         } catch (Exception e) {
             plugin.getLogger().warning("更新配置字段失败: " + key + ", 值: " + value + ", 错误: " + e.getMessage());
@@ -389,8 +417,10 @@ public class PickupConfig {
     // ========== Getter 方法 ==========
     public boolean isEnabled() { return enabled; }
     public boolean isPlayerDriven() { return playerDriven; }
+    public boolean isBroadPhase() { return broadPhase; }
     public double getPickupRange() { return pickupRange; }
     public boolean isOffhandPickupEnabled() { return offhandPickupEnabled; }
+    public boolean isBatchPickup() { return batchPickup; }
     public int getSelfImmuneTicks() { return selfImmuneTicks; }
     public boolean isItemDrivenEnabled() { return itemDrivenEnabled; }
     public int getActiveDetectionTicks() { return activeDetectionTicks; }
@@ -406,4 +436,6 @@ public class PickupConfig {
     public int getItemMergeScanIntervalTicks() { return itemMergeScanIntervalTicks; }
     public double getPlayerMinMoveDistance() {return playerMinMoveDistance;}
     public int getPlayerMoveCheckIntervalTicks() { return playerMoveCheckIntervalTicks; }
+    public int getIndexCellSize() { return indexCellSize; }
+    public String getIndexBackend() { return indexBackend; }
 }
\ No newline at end of file
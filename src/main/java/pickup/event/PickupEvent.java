@@ -1,7 +1,9 @@
 package pickup.event;
 
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.format.NamedTextColor;
+import org.bukkit.Chunk;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.entity.Item;
@@ -9,21 +11,44 @@ import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockFace;
+import org.bukkit.event.block.BlockBreakEvent;
 import org.bukkit.event.block.BlockDropItemEvent;
-import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.block.BlockExplodeEvent;
+import org.bukkit.event.block.BlockFromToEvent;
+import org.bukkit.event.block.BlockPistonExtendEvent;
+import org.bukkit.event.block.BlockPistonRetractEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityExplodeEvent;
 import org.bukkit.event.entity.EntityPickupItemEvent;
+import org.bukkit.event.entity.EntityPortalEvent;
+import org.bukkit.event.entity.EntityTeleportEvent;
 import org.bukkit.event.entity.ItemSpawnEvent;
 import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.InventoryClickEvent;
+import org.bukkit.event.inventory.InventoryDragEvent;
 import org.bukkit.event.inventory.InventoryPickupItemEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
+import org.bukkit.event.player.PlayerItemBreakEvent;
+import org.bukkit.event.player.PlayerItemConsumeEvent;
 import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerSwapHandItemsEvent;
+import org.bukkit.event.world.EntitiesLoadEvent;
+import org.bukkit.event.world.EntitiesUnloadEvent;
+import org.bukkit.event.world.WorldLoadEvent;
+import org.bukkit.event.world.WorldSaveEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
 import org.bukkit.inventory.ItemStack;
 import org.jetbrains.annotations.NotNull;
 import pickup.Main;
 import pickup.config.PickupConfig;
+import pickup.feature.CustomItemMerger;
 import pickup.feature.PickupManager;
 
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
@@ -108,24 +133,6 @@ public class PickupEvent implements Listener {
         pickupManager.handleBlockDrop(event);
     }
 
-    /**
-     * 处理实体死亡事件
-     * 当实体（怪物、动物等）死亡掉落物品时触发
-     *
-     * @param event 实体死亡事件
-     */
-    @EventHandler(priority = EventPriority.LOWEST, ignoreCancelled = true)
-    public void onEntityDeath(EntityDeathEvent event) {
-        // 检查插件是否启用
-        if (!plugin.isEnabled() || plugin.isPickupDisabled()) {
-            return;
-        }
-
-        // 委托给拾取管理器处理实体死亡掉落逻辑
-        // 注意：此事件中的掉落物需要特殊处理，因为不会立即生成物品实体
-        pickupManager.handleEntityDeath(event);
-    }
-
     /**
      * 当玩家死亡时触发，播报死亡日志
      *
@@ -210,6 +217,10 @@ public class PickupEvent implements Listener {
         if (!plugin.isEnabled() || plugin.isPickupDisabled() || !config.isPlayerDriven()) {
             return;
         }
+        // 粗筛模式每tick统一配对，无需按移动事件单独检测
+        if (pickupManager.isBroadPhaseActive()) {
+            return;
+        }
 
         Player player = event.getPlayer();
         if (!player.isOnline() || player.getGameMode() == org.bukkit.GameMode.SPECTATOR) {
@@ -221,6 +232,11 @@ public class PickupEvent implements Listener {
             return;
         }
 
+        // 所在区块及相邻区块都没有物品时直接跳过（单次位测试）
+        if (!pickupManager.hasPickupableItemsNear(event.getTo())) {
+            return;
+        }
+
         // ====== 移动距离检查 ======
         double minMoveDistance = config.getPlayerMinMoveDistance();
         double minMoveDistanceSq = minMoveDistance * minMoveDistance;
@@ -285,6 +301,226 @@ public class PickupEvent implements Listener {
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
         lastCheckTicks.remove(event.getPlayer().getUniqueId());
+        pickupManager.forgetPlayer(event.getPlayer().getUniqueId());
+    }
+
+    // ====== 背包变化：拾取时使用的槽位模型需要重建 ======
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryClick(InventoryClickEvent event) {
+        if (event.getWhoClicked() instanceof Player player) {
+            pickupManager.invalidateInventory(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInventoryDrag(InventoryDragEvent event) {
+        if (event.getWhoClicked() instanceof Player player) {
+            pickupManager.invalidateInventory(player);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onDropForInventory(PlayerDropItemEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onSwapHandItems(PlayerSwapHandItemsEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockPlace(BlockPlaceEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onItemConsume(PlayerItemConsumeEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onItemBreak(PlayerItemBreakEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event) {
+        pickupManager.invalidateInventory(event.getPlayer());
+    }
+
+    // ====== 区块生命周期：加载时批量登记物品，卸载时整块摘除 ======
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesLoad(EntitiesLoadEvent event) {
+        // 功能关闭时快照任务不运行，队列不会被处理；重新启用时由 queueLoadedWorlds 登记现存物品
+        if (!plugin.isEnabled() || plugin.isPickupDisabled()) {
+            return;
+        }
+        plugin.getItemSpatialIndex().queueChunkLoad(event.getWorld(), event.getEntities());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntitiesUnload(EntitiesUnloadEvent event) {
+        // 检查插件是否启用
+        if (!plugin.isEnabled() || plugin.isPickupDisabled()) {
+            return;
+        }
+        Chunk chunk = event.getChunk();
+        plugin.getItemSpatialIndex().evictChunk(chunk.getWorld(), chunk.getX(), chunk.getZ());
+        // 实体保存前把物品状态写回 PDC
+        for (org.bukkit.entity.Entity entity : event.getEntities()) {
+            if (entity instanceof Item item) {
+                pickupManager.persistItem(item);
+            }
+        }
+    }
+
+    // ====== 物品状态表：实体离开世界时删除记录，需要持久化时写回 PDC ======
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemoveFromWorld(EntityRemoveFromWorldEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            pickupManager.forgetItem(item);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldSave(WorldSaveEvent event) {
+        pickupManager.persistWorld(event.getWorld());
+    }
+
+    // ====== 世界生命周期：临时世界（小游戏、资源世界）卸载后释放所有按世界的状态 ======
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldLoad(WorldLoadEvent event) {
+        pickupManager.onWorldLoad(event.getWorld());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        World world = event.getWorld();
+        for (Item item : world.getEntitiesByClass(Item.class)) {
+            pickupManager.persistItem(item);
+        }
+        int released = plugin.getItemSpatialIndex().unloadWorld(world);
+        CustomItemMerger merger = plugin.getItemMerger();
+        if (merger != null) {
+            merger.unloadWorld(world);
+        }
+        pickupManager.onWorldUnload(world);
+
+        if (plugin.getConfig().getBoolean("debug", false)) {
+            plugin.getLogger().info("世界 " + world.getName() + " 已卸载，释放 " + released + " 个索引条目");
+        }
+    }
+
+    // ====== 唤醒静止物品：索引只跟踪移动中的物品，以下事件可能让静止物品重新移动 ======
+
+    /**
+     * 物品进入传送门：唤醒以便快照任务检测跨世界转移并重新分桶
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityPortal(EntityPortalEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            plugin.getItemSpatialIndex().wakeItem(item);
+            // 跨世界时服务端会按 NBT 复制出新实体，先把状态写回 PDC
+            pickupManager.persistItem(item);
+        }
+    }
+
+    /**
+     * 物品被传送（插件或命令）
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityTeleport(EntityTeleportEvent event) {
+        if (event.getEntity() instanceof Item item) {
+            plugin.getItemSpatialIndex().wakeItem(item);
+            Location to = event.getTo();
+            if (to != null && to.getWorld() != null && !to.getWorld().equals(item.getWorld())) {
+                pickupManager.persistItem(item);
+            }
+        }
+    }
+
+    /**
+     * 活塞推出：被推动的方块可能推走物品
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonExtend(BlockPistonExtendEvent event) {
+        wakePistonArea(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+
+    /**
+     * 活塞拉回（粘性活塞）
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPistonRetract(BlockPistonRetractEvent event) {
+        wakePistonArea(event.getBlock(), event.getBlocks(), event.getDirection());
+    }
+
+    /**
+     * 方块被破坏：其上的物品会掉落
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockBreak(BlockBreakEvent event) {
+        Block block = event.getBlock();
+        plugin.getItemSpatialIndex().wakeArea(block.getWorld(),
+                block.getX(), block.getY(), block.getZ(), block.getX(), block.getY() + 1, block.getZ());
+    }
+
+    /**
+     * 液体流入新方块：水流会冲走物品
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onLiquidFlow(BlockFromToEvent event) {
+        Block to = event.getToBlock();
+        plugin.getItemSpatialIndex().wakeArea(to.getWorld(), to.getX(), to.getY(), to.getZ(), to.getX(), to.getY(), to.getZ());
+    }
+
+    /**
+     * 实体爆炸（苦力怕、TNT等）：冲击波会推动附近物品
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onEntityExplode(EntityExplodeEvent event) {
+        Location loc = event.getLocation();
+        wakeExplosionArea(loc.getWorld(), loc.getBlockX(), loc.getBlockY(), loc.getBlockZ());
+    }
+
+    /**
+     * 方块爆炸（床、重生锚等）
+     */
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onBlockExplode(BlockExplodeEvent event) {
+        Block block = event.getBlock();
+        wakeExplosionArea(block.getWorld(), block.getX(), block.getY(), block.getZ());
+    }
+
+    private void wakePistonArea(Block piston, List<Block> moved, BlockFace direction) {
+        int minX = piston.getX(), maxX = minX;
+        int minY = piston.getY(), maxY = minY;
+        int minZ = piston.getZ(), maxZ = minZ;
+        for (Block block : moved) {
+            // 方块移动后的位置同样需要覆盖
+            int x = block.getX() + direction.getModX();
+            int y = block.getY() + direction.getModY();
+            int z = block.getZ() + direction.getModZ();
+            minX = Math.min(minX, Math.min(block.getX(), x));
+            maxX = Math.max(maxX, Math.max(block.getX(), x));
+            minY = Math.min(minY, Math.min(block.getY(), y));
+            maxY = Math.max(maxY, Math.max(block.getY(), y));
+            minZ = Math.min(minZ, Math.min(block.getZ(), z));
+            maxZ = Math.max(maxZ, Math.max(block.getZ(), z));
+        }
+        plugin.getItemSpatialIndex().wakeArea(piston.getWorld(), minX, minY, minZ, maxX, maxY, maxZ);
+    }
+
+    private void wakeExplosionArea(World world, int x, int y, int z) {
+        if (world == null) return;
+        int radius = 8; // 覆盖常见爆炸的击退范围
+        plugin.getItemSpatialIndex().wakeArea(world,
+                x - radius, y - radius, z - radius, x + radius, y + radius, z + radius);
     }
 
     /// 事件优先级说明：
@@ -0,0 +1,1294 @@
+package pickup.feature;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import org.bukkit.scheduler.BukkitRunnable;
+import pickup.Main;
+import pickup.tool.LongObjectMap;
+import pickup.tool.RangeFilter;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 物品空间索引的公共部分（与具体数据结构无关）
+ * 负责实体ID反向索引、按区块的成员表（区块生命周期、占用位图、整世界遍历与计数校正）、
+ * 移动跟踪与每tick快照、失效条目清除、增量清理与区块登记队列；
+ * 子类（后端）只需实现条目的插入、移除、移动与范围查询。
+ * 索引只保存实体ID与UUID，不持有 Item 实体对象；只有查询命中、需要交给调用方处理时才按UUID解析出实体。
+ * 所有读写都在主线程进行；其他线程只能通过 {@link #getSnapshot()} 读取每tick发布的不可变快照。
+ */
+public abstract class AbstractSpatialIndex implements SpatialIndex {
+
+    protected final Main plugin;
+
+    // 按世界的结构都以世界UUID为键，不持有 World 对象；世界卸载时整体释放（见 unloadWorld）
+    // 区块成员表：世界UUID -> 区块键(long) -> 区块内的条目
+    private final Map<UUID, LongObjectMap<ChunkMembers>> chunkMembers = new HashMap<>();
+
+    // 反向索引：实体ID -> 索引条目
+    private final LongObjectMap<Entry> idToEntry = new LongObjectMap<>();
+
+    // 按世界统计物品数量（优化hasPickupableItems检查）
+    private final Map<UUID, AtomicInteger> worldItemCount = new HashMap<>();
+
+    // 按世界的区块占用位图（玩家移动时 O(1) 判断附近是否可能有物品）及其过滤统计
+    private final Map<UUID, ChunkOccupancy> occupancy = new HashMap<>();
+    private long occupancyHits = 0;   // 附近可能有物品，放行
+    private long occupancyMisses = 0; // 附近没有物品，直接拒绝
+
+    // 当前已索引的物品总数
+    private int indexedCount = 0;
+
+    // 定时任务
+    private BukkitRunnable snapshotTask = null;
+    private BukkitRunnable cleanupTask = null;
+    // 快照刷新时复用的对象（避免每tick分配）
+    private final Location snapshotLocation = new Location(null, 0, 0, 0);
+    // 已确认实体不存在、等待移除的条目（遍历期间不能直接修改索引）
+    private final List<Entry> staleEntries = new ArrayList<>();
+
+    // 移动中的物品（紧凑数组，删除时用末尾元素填补），快照任务只刷新这些物品
+    private Entry[] movingEntries = new Entry[64];
+    private int movingCount = 0;
+    // 连续静止多少次快照后转入静止状态
+    private static final int SETTLE_TICKS = 10;
+    // 判定"未移动"的位移平方阈值
+    private static final double STILL_EPSILON_SQ = 1.0E-6;
+
+    // 区块生命周期：待登记的区块实体批次、待清理反向索引的已卸载区块
+    private final ArrayDeque<PendingChunk> pendingLoads = new ArrayDeque<>();
+    private final ArrayDeque<ChunkMembers> evictedChunks = new ArrayDeque<>();
+    // 每tick最多处理的实体/条目数量
+    private static final int LIFECYCLE_BUDGET_PER_TICK = 512;
+
+    // 增量清理：一轮清扫的tick数（30秒）、每tick至少检查的槽位数，以及可恢复的游标与统计
+    private static final int CLEANUP_SWEEP_TICKS = 20 * 30;
+    private static final int CLEANUP_MIN_SLOTS_PER_TICK = 16;
+    private int cleanupCursor = 0;
+    private int sweepReclaimed = 0;
+    private int lastSweepReclaimed = 0;
+    private long totalReclaimed = 0;
+    private int completedSweeps = 0;
+
+    // 范围查询期间的调用方回调（复用同一个条目回调，查询不分配对象；嵌套查询时保存并恢复）
+    private ItemVisitor activeVisitor;
+    private final EntryVisitor resolvingVisitor = entry -> {
+        // 已卸载区块中的条目仅等待清理
+        if (entry.chunk.evicted) return true;
+        Item item = resolve(entry);
+        return item == null || activeVisitor.visit(item);
+    };
+
+    // 只需要实体ID的查询回调（同样复用，不解析实体）
+    private IdVisitor activeIdVisitor;
+    private final EntryVisitor idVisitor = entry ->
+            entry.chunk.evicted || entry.stale || activeIdVisitor.visit(entry.entityId);
+
+    // 异步读取用的不可变快照：有读者时每tick末尾为发生变化的世界重建视图并发布
+    private volatile IndexSnapshot publishedSnapshot = IndexSnapshot.EMPTY;
+    private volatile long lastSnapshotRead = -SNAPSHOT_IDLE_TICKS - 1; // 读者最近读取的快照序号
+    private long snapshotSequence = 0;                                   // 快照任务运行次数
+    private final Set<UUID> dirtyWorlds = new HashSet<>();               // 上次发布后有变化的世界
+    // 超过这么多tick没有读者读取快照时暂停发布
+    private static final int SNAPSHOT_IDLE_TICKS = 100;
+
+    // 变更监听器（每人兴趣集合等增量缓存），可为null
+    private ChangeListener changeListener;
+
+    // wakeArea 期间的区域边界（复用同一个条目回调）
+    private int wakeMinX, wakeMinY, wakeMinZ, wakeMaxX, wakeMaxY, wakeMaxZ;
+    private final EntryVisitor wakeVisitor = entry -> {
+        if (!entry.chunk.evicted
+                && entry.x >= wakeMinX && entry.x < wakeMaxX
+                && entry.y >= wakeMinY && entry.y < wakeMaxY
+                && entry.z >= wakeMinZ && entry.z < wakeMaxZ) {
+            markMoving(entry);
+        }
+        return true;
+    };
+
+    protected AbstractSpatialIndex(Main plugin) {
+        this.plugin = plugin;
+    }
+
+    // ========== 后端接口 ==========
+
+    /**
+     * 把条目加入后端结构（条目的世界与快照坐标已写好）
+     */
+    protected abstract void backendInsert(Entry entry);
+
+    /**
+     * 把条目从后端结构移除
+     */
+    protected abstract void backendRemove(Entry entry);
+
+    /**
+     * 条目在同一区块内移动（快照坐标已更新）：后端按需重新分桶，否则只更新桶内坐标
+     */
+    protected abstract void backendMove(Entry entry);
+
+    /**
+     * 遍历与查询球相交的条目（按快照坐标精确过滤距离）
+     * @return 完整遍历返回true，被回调提前结束返回false
+     */
+    protected abstract boolean backendQuery(World world, double cx, double cy, double cz, double range,
+                                            EntryVisitor visitor);
+
+    /**
+     * 世界卸载：释放后端中该世界的全部结构（之后不会再为该世界的条目调用 backendRemove）
+     */
+    protected abstract void backendUnloadWorld(UUID worldId);
+
+    /**
+     * 区块卸载时整块摘除（可选优化）：此后区块内条目的 backendRemove 仍会被逐个调用，
+     * 已整块摘除的后端可以直接忽略
+     */
+    protected void backendEvictChunk(World world, long chunkKey) {
+    }
+
+    /**
+     * 条目回调（后端查询使用）
+     */
+    @FunctionalInterface
+    protected interface EntryVisitor {
+        boolean visit(Entry entry);
+    }
+
+    // ========== 增删 ==========
+
+    @Override
+    public void setChangeListener(ChangeListener listener) {
+        this.changeListener = listener;
+    }
+
+    @Override
+    public void registerItem(Item item) {
+        if (item == null || !item.isValid() || item.isDead()) return;
+        int entityId = item.getEntityId();
+        Entry existing = idToEntry.get(entityId);
+        if (existing != null) {
+            if (!existing.chunk.evicted) return; // 已注册，避免重复计数
+            // 区块卸载后很快又被加载：旧条目仍在等待清理，交还给清理队列，重新登记
+            idToEntry.remove(entityId);
+            markSettled(existing);
+        }
+
+        Location loc = item.getLocation(snapshotLocation);
+        Entry entry = new Entry(entityId, item.getUniqueId());
+        insert(entry, item.getWorld(), loc.getX(), loc.getY(), loc.getZ());
+        idToEntry.put(entityId, entry);
+
+        // 新物品通常仍在下落或弹跳，先加入移动跟踪
+        markMoving(entry);
+
+        if (plugin.getConfig().getBoolean("debug", false)) {
+            plugin.getLogger().fine("注册物品到索引: " + item.getItemStack().getType() +
+                    " 在区块 " + chunkKeyToString(entry.chunk.key) + ", 世界: " + entry.world.getName());
+        }
+    }
+
+    @Override
+    public void unregisterItem(Item item) {
+        if (item == null) return;
+        unregister(item.getEntityId());
+    }
+
+    /**
+     * 按实体ID从索引中移除物品
+     */
+    private void unregister(int entityId) {
+        Entry entry = idToEntry.remove(entityId);
+        if (entry == null) return;
+
+        // 使用索引记录的世界，物品被传送后也能正确删除
+        detach(entry);
+        markSettled(entry);
+    }
+
+    /**
+     * 把条目放入指定坐标所在的区块与后端结构，并写入快照坐标
+     */
+    private void insert(Entry entry, World world, double x, double y, double z) {
+        int chunkX = (int) Math.floor(x) >> 4;
+        int chunkZ = (int) Math.floor(z) >> 4;
+        long key = chunkKey(chunkX, chunkZ);
+
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.computeIfAbsent(world.getUID(), w -> new LongObjectMap<>());
+        ChunkMembers chunk = worldChunks.get(key);
+        if (chunk == null) {
+            chunk = new ChunkMembers(key);
+            worldChunks.put(key, chunk);
+            occupancy.computeIfAbsent(world.getUID(), w -> new ChunkOccupancy()).chunkOccupied(chunkX, chunkZ);
+        }
+
+        entry.world = world;
+        entry.x = x;
+        entry.y = y;
+        entry.z = z;
+        chunk.add(entry);
+        backendInsert(entry);
+
+        indexedCount++;
+        adjustWorldCount(world, 1);
+        dirtyWorlds.add(world.getUID());
+
+        if (changeListener != null) {
+            changeListener.itemAdded(world, entry.entityId, x, y, z);
+        }
+    }
+
+    /**
+     * 把条目从所在区块与后端结构中摘除，清理空区块并更新世界计数
+     */
+    private void detach(Entry entry) {
+        World world = entry.world;
+        ChunkMembers chunk = entry.chunk;
+        chunk.remove(entry);
+        backendRemove(entry);
+        notifyRemoved(entry);
+        dirtyWorlds.add(world.getUID());
+
+        // 已卸载的区块在摘除时已扣减过计数
+        if (chunk.evicted) return;
+        indexedCount--;
+        adjustWorldCount(world, -1);
+
+        if (chunk.size == 0) {
+            LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(world.getUID());
+            if (worldChunks != null) {
+                worldChunks.remove(chunk.key);
+                if (worldChunks.isEmpty()) {
+                    chunkMembers.remove(world.getUID());
+                }
+            }
+            vacate(world, chunk.key);
+        }
+    }
+
+    private void notifyRemoved(Entry entry) {
+        if (changeListener != null) {
+            changeListener.itemRemoved(entry.world, entry.entityId, entry.x, entry.y, entry.z);
+        }
+    }
+
+    /**
+     * 区块被移除后更新占用位图
+     */
+    private void vacate(World world, long chunkKey) {
+        ChunkOccupancy worldOccupancy = occupancy.get(world.getUID());
+        if (worldOccupancy == null) return;
+        worldOccupancy.chunkVacated(chunkKeyX(chunkKey), chunkKeyZ(chunkKey));
+        if (worldOccupancy.isEmpty()) {
+            occupancy.remove(world.getUID());
+        }
+    }
+
+    /**
+     * 更新世界物品计数
+     */
+    private void adjustWorldCount(World world, int delta) {
+        if (delta > 0) {
+            worldItemCount.computeIfAbsent(world.getUID(), w -> new AtomicInteger(0)).addAndGet(delta);
+            return;
+        }
+        AtomicInteger count = worldItemCount.get(world.getUID());
+        if (count != null) {
+            int remaining = count.addAndGet(delta);
+            if (remaining <= 0) {
+                worldItemCount.remove(world.getUID());
+            }
+        }
+    }
+
+    /**
+     * 更新条目坐标；跨越区块或世界时重新登记，区块内的移动交给后端
+     */
+    private void relocate(Entry entry, World world, double x, double y, double z) {
+        if (world == entry.world
+                && chunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4) == entry.chunk.key) {
+            entry.x = x;
+            entry.y = y;
+            entry.z = z;
+            backendMove(entry);
+            dirtyWorlds.add(world.getUID());
+            if (changeListener != null) {
+                changeListener.itemMoved(world, entry.entityId, x, y, z);
+            }
+            return;
+        }
+        detach(entry);
+        insert(entry, world, x, y, z);
+    }
+
+    // ========== 范围查询 ==========
+
+    @Override
+    public boolean forEachNearby(Location center, double range, ItemVisitor visitor) {
+        if (center == null) return true;
+        return forEachNearby(center.getWorld(), center.getX(), center.getY(), center.getZ(), range, visitor);
+    }
+
+    @Override
+    public boolean forEachNearby(World world, double cx, double cy, double cz, double range, ItemVisitor visitor) {
+        if (world == null || !chunkMembers.containsKey(world.getUID())) return true;
+        ItemVisitor previous = activeVisitor;
+        activeVisitor = visitor;
+        try {
+            // 只有命中的物品才解析实体
+            return backendQuery(world, cx, cy, cz, range, resolvingVisitor);
+        } finally {
+            activeVisitor = previous;
+        }
+    }
+
+    @Override
+    public boolean forEachNearbyId(World world, double cx, double cy, double cz, double range, IdVisitor visitor) {
+        if (world == null || !chunkMembers.containsKey(world.getUID())) return true;
+        IdVisitor previous = activeIdVisitor;
+        activeIdVisitor = visitor;
+        try {
+            return backendQuery(world, cx, cy, cz, range, idVisitor);
+        } finally {
+            activeIdVisitor = previous;
+        }
+    }
+
+    @Override
+    public Item getItem(int entityId) {
+        Entry entry = idToEntry.get(entityId);
+        if (entry == null || entry.chunk.evicted) return null;
+        return resolve(entry);
+    }
+
+    @Override
+    public double distanceSquared(int entityId, World world, double x, double y, double z) {
+        Entry entry = idToEntry.get(entityId);
+        if (entry == null || entry.world != world || entry.chunk.evicted) return Double.POSITIVE_INFINITY;
+        double dx = entry.x - x, dy = entry.y - y, dz = entry.z - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    @Override
+    public int collectNearby(Location center, double range, List<Item> out) {
+        out.clear();
+        forEachNearby(center, range, out::add);
+        return out.size();
+    }
+
+    @Override
+    public Set<Item> getNearbyItems(Location center, double range) {
+        Set<Item> result = new HashSet<>();
+        forEachNearby(center, range, item -> {
+            result.add(item);
+            return true;
+        });
+        return result;
+    }
+
+    @Override
+    public boolean mayHaveItemsNear(Location location) {
+        World world = location.getWorld();
+        ChunkOccupancy worldOccupancy = world == null ? null : occupancy.get(world.getUID());
+        boolean near = worldOccupancy != null
+                && worldOccupancy.isNearOccupied(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+        if (near) {
+            occupancyHits++;
+        } else {
+            occupancyMisses++;
+        }
+        return near;
+    }
+
+    @Override
+    public Location readPosition(Item item, Location out) {
+        Entry entry = idToEntry.get(item.getEntityId());
+        if (entry == null) {
+            return item.getLocation(out);
+        }
+        out.setWorld(entry.world);
+        out.setX(entry.x);
+        out.setY(entry.y);
+        out.setZ(entry.z);
+        return out;
+    }
+
+    @Override
+    public double distanceSquared(Item item, double x, double y, double z) {
+        Entry entry = idToEntry.get(item.getEntityId());
+        double ix, iy, iz;
+        if (entry != null) {
+            ix = entry.x;
+            iy = entry.y;
+            iz = entry.z;
+        } else {
+            Location loc = item.getLocation(snapshotLocation);
+            ix = loc.getX();
+            iy = loc.getY();
+            iz = loc.getZ();
+        }
+        double dx = ix - x, dy = iy - y, dz = iz - z;
+        return dx * dx + dy * dy + dz * dz;
+    }
+
+    // ========== 世界遍历与计数 ==========
+
+    @Override
+    public boolean forEachInWorld(World world, ItemVisitor visitor) {
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(world.getUID());
+        if (worldChunks == null) return true;
+
+        for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+            ChunkMembers chunk = worldChunks.valueAt(c);
+            if (chunk == null) continue;
+            for (int i = 0, n = chunk.size; i < n; i++) {
+                Item item = resolve(chunk.entries[i]);
+                if (item != null && !visitor.visit(item)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int collectInWorld(World world, int offset, int limit, List<Item> out) {
+        out.clear();
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(world.getUID());
+        if (worldChunks == null || limit <= 0) return 0;
+
+        // 两轮：第一轮从 offset 开始到末尾，第二轮从头补足；跳过的条目不解析实体
+        for (int pass = 0; pass < 2; pass++) {
+            int skip = pass == 0 ? offset : 0;
+            int visited = 0;
+            for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+                ChunkMembers chunk = worldChunks.valueAt(c);
+                if (chunk == null) continue;
+                if (skip >= chunk.size) {
+                    // 整个区块都在跳过范围内
+                    skip -= chunk.size;
+                    visited += chunk.size;
+                    continue;
+                }
+                for (int i = 0, n = chunk.size; i < n; i++) {
+                    if (pass == 1 && visited >= offset) return out.size(); // 回到起点
+                    visited++;
+                    if (skip > 0) {
+                        skip--;
+                        continue;
+                    }
+                    Item item = resolve(chunk.entries[i]);
+                    if (item != null) {
+                        out.add(item);
+                        if (out.size() >= limit) return out.size();
+                    }
+                }
+            }
+            if (offset == 0) break;
+        }
+        return out.size();
+    }
+
+    @Override
+    public void forEachPosition(World world, PositionVisitor visitor) {
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(world.getUID());
+        if (worldChunks == null) return;
+
+        for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+            ChunkMembers chunk = worldChunks.valueAt(c);
+            if (chunk == null) continue;
+            for (int i = 0, n = chunk.size; i < n; i++) {
+                Entry entry = chunk.entries[i];
+                if (!entry.stale) {
+                    visitor.visit(entry.entityId, entry.x, entry.y, entry.z);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Set<Item> getAllItemsInWorld(World world) {
+        Set<Item> allItems = new HashSet<>();
+        forEachInWorld(world, item -> {
+            allItems.add(item);
+            return true;
+        });
+        return allItems;
+    }
+
+    @Override
+    public boolean hasItemsInWorld(World world) {
+        AtomicInteger count = worldItemCount.get(world.getUID());
+        return count != null && count.get() > 0;
+    }
+
+    @Override
+    public int getItemCount(World world) {
+        AtomicInteger count = worldItemCount.get(world.getUID());
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public int getIndexedCount() {
+        return indexedCount;
+    }
+
+    @Override
+    public long getOccupancyHits() {
+        return occupancyHits;
+    }
+
+    @Override
+    public long getOccupancyMisses() {
+        return occupancyMisses;
+    }
+
+    // ========== 快照 ==========
+
+    @Override
+    public void startSnapshotTask() {
+        if (snapshotTask != null) return;
+        snapshotTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                removeStaleEntries();
+                processLifecycleQueue();
+                refreshSnapshot();
+                snapshotSequence++;
+                publishSnapshot();
+            }
+        };
+        snapshotTask.runTaskTimer(plugin, 0, 1);
+    }
+
+    /**
+     * 刷新移动中物品的坐标快照
+     * 开销只与移动中的物品数量成正比；静止物品不参与
+     */
+    private void refreshSnapshot() {
+        Location loc = snapshotLocation;
+        // 倒序遍历：转入静止时用末尾（已处理过的）元素填补当前位置
+        for (int i = movingCount - 1; i >= 0; i--) {
+            Entry entry = movingEntries[i];
+            Item item = entry.world.getEntity(entry.uuid) instanceof Item found && found.isValid() ? found : null;
+
+            if (item == null) {
+                // 跨维度传送后实体会被替换为同UUID的新实体（实体ID改变）
+                item = findDimensionReplacement(entry);
+                if (item == null) {
+                    markStale(entry);
+                    continue;
+                }
+                if (idToEntry.get(entry.entityId) == entry) {
+                    idToEntry.remove(entry.entityId);
+                }
+                notifyRemoved(entry); // 旧ID作废
+                dirtyWorlds.add(entry.world.getUID());
+                entry.entityId = item.getEntityId();
+                idToEntry.put(entry.entityId, entry);
+                if (entry.bucket != null) {
+                    entry.bucket.ids[entry.bucketSlot] = entry.entityId;
+                }
+            }
+
+            item.getLocation(loc);
+            double dx = loc.getX() - entry.x;
+            double dy = loc.getY() - entry.y;
+            double dz = loc.getZ() - entry.z;
+            boolean still = loc.getWorld() == entry.world && dx * dx + dy * dy + dz * dz < STILL_EPSILON_SQ;
+
+            if (still) {
+                if (++entry.stillTicks >= SETTLE_TICKS) {
+                    markSettled(entry);
+                }
+                continue;
+            }
+
+            entry.stillTicks = 0;
+            relocate(entry, loc.getWorld(), loc.getX(), loc.getY(), loc.getZ());
+        }
+
+        removeStaleEntries();
+    }
+
+    // ========== 异步快照 ==========
+
+    /**
+     * 最近发布的不可变快照（线程安全，任意线程可调用）
+     * 第一次调用或长时间未读取后，返回的快照可能是旧的；之后每tick都会发布新快照
+     */
+    @Override
+    public IndexSnapshot getSnapshot() {
+        IndexSnapshot snapshot = publishedSnapshot;
+        lastSnapshotRead = snapshot.getTick();
+        return snapshot;
+    }
+
+    /**
+     * 发布快照：只为上次发布后有变化的世界重建视图，其他世界沿用旧视图
+     */
+    private void publishSnapshot() {
+        IndexSnapshot previous = publishedSnapshot;
+        if (previous.getTick() - lastSnapshotRead > SNAPSHOT_IDLE_TICKS) return; // 没有读者
+        if (dirtyWorlds.isEmpty() && previous != IndexSnapshot.EMPTY) return;    // 没有变化，沿用
+
+        Map<UUID, IndexSnapshot.WorldView> worlds = new HashMap<>(previous.getWorlds());
+        for (UUID worldId : dirtyWorlds) {
+            LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(worldId);
+            IndexSnapshot.WorldView view = worldChunks == null ? null : buildWorldView(worldChunks);
+            if (view == null) {
+                worlds.remove(worldId);
+            } else {
+                worlds.put(worldId, view);
+            }
+        }
+        dirtyWorlds.clear();
+        publishedSnapshot = new IndexSnapshot(snapshotSequence, Collections.unmodifiableMap(worlds));
+    }
+
+    /**
+     * 把一个世界的区块成员复制为按区块键排序的平行数组
+     */
+    private static IndexSnapshot.WorldView buildWorldView(LongObjectMap<ChunkMembers> worldChunks) {
+        long[] keys = new long[worldChunks.size()];
+        int chunkCount = 0;
+        int total = 0;
+        for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+            ChunkMembers chunk = worldChunks.valueAt(c);
+            if (chunk != null && chunk.size > 0) {
+                keys[chunkCount++] = chunk.key;
+                total += chunk.size;
+            }
+        }
+        if (total == 0) return null;
+        keys = Arrays.copyOf(keys, chunkCount);
+        Arrays.sort(keys);
+
+        int[] chunkStart = new int[chunkCount + 1];
+        int[] ids = new int[total];
+        UUID[] uuids = new UUID[total];
+        double[] xs = new double[total], ys = new double[total], zs = new double[total];
+        int n = 0;
+        for (int c = 0; c < chunkCount; c++) {
+            chunkStart[c] = n;
+            ChunkMembers chunk = worldChunks.get(keys[c]);
+            for (int i = 0; i < chunk.size; i++) {
+                Entry entry = chunk.entries[i];
+                if (entry.stale) continue;
+                ids[n] = entry.entityId;
+                uuids[n] = entry.uuid;
+                xs[n] = entry.x;
+                ys[n] = entry.y;
+                zs[n] = entry.z;
+                n++;
+            }
+        }
+        chunkStart[chunkCount] = n;
+        if (n < total) {
+            // 跳过了待移除的条目
+            ids = Arrays.copyOf(ids, n);
+            uuids = Arrays.copyOf(uuids, n);
+            xs = Arrays.copyOf(xs, n);
+            ys = Arrays.copyOf(ys, n);
+            zs = Arrays.copyOf(zs, n);
+        }
+        return new IndexSnapshot.WorldView(keys, chunkStart, ids, uuids, xs, ys, zs);
+    }
+
+    /**
+     * 查找跨维度传送后替换原实体的新物品实体（UUID不变，位于其他世界）
+     */
+    private Item findDimensionReplacement(Entry entry) {
+        Entity entity = Bukkit.getEntity(entry.uuid);
+        if (entity instanceof Item replacement && replacement.isValid()) {
+            return replacement;
+        }
+        return null;
+    }
+
+    /**
+     * 按条目记录的世界和UUID解析出实体
+     * @return 实体已不存在时返回null，并把条目标记为待移除
+     */
+    private Item resolve(Entry entry) {
+        if (entry.stale) return null;
+        Entity entity = entry.world.getEntity(entry.uuid);
+        if (entity instanceof Item item && item.isValid() && !item.isDead()) {
+            return item;
+        }
+        // 仍在移动跟踪中的条目可能刚跨维度传送，交给快照任务处理
+        if (entry.movingSlot < 0) {
+            markStale(entry);
+        }
+        return null;
+    }
+
+    private void markStale(Entry entry) {
+        if (entry.stale) return;
+        entry.stale = true;
+        staleEntries.add(entry);
+    }
+
+    /**
+     * 移除已确认实体不存在的条目
+     */
+    private void removeStaleEntries() {
+        if (staleEntries.isEmpty()) return;
+        for (int i = 0, n = staleEntries.size(); i < n; i++) {
+            Entry entry = staleEntries.get(i);
+            // 条目可能已随区块卸载或显式注销被移除
+            if (idToEntry.get(entry.entityId) == entry) {
+                unregister(entry.entityId);
+            }
+        }
+        staleEntries.clear();
+    }
+
+    // ========== 区块生命周期 ==========
+
+    @Override
+    public void queueLoadedWorlds() {
+        for (World world : Bukkit.getWorlds()) {
+            for (Chunk chunk : world.getLoadedChunks()) {
+                queueChunkLoad(world, Arrays.asList(chunk.getEntities()));
+            }
+        }
+    }
+
+    @Override
+    public void queueChunkLoad(World world, List<Entity> entities) {
+        List<Item> items = null;
+        for (Entity entity : entities) {
+            if (entity instanceof Item item) {
+                if (items == null) items = new ArrayList<>();
+                items.add(item);
+            }
+        }
+        if (items != null) {
+            pendingLoads.add(new PendingChunk(world, items));
+        }
+    }
+
+    /**
+     * 区块实体卸载：整块摘除区块成员并扣减计数（O(1)），反向索引与后端的清理放入队列分片执行
+     */
+    @Override
+    public void evictChunk(World world, int chunkX, int chunkZ) {
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.get(world.getUID());
+        if (worldChunks == null) return;
+        ChunkMembers chunk = worldChunks.remove(chunkKey(chunkX, chunkZ));
+        if (chunk == null) return;
+        if (worldChunks.isEmpty()) {
+            chunkMembers.remove(world.getUID());
+        }
+
+        chunk.evicted = true;
+        dirtyWorlds.add(world.getUID());
+        indexedCount -= chunk.size;
+        adjustWorldCount(world, -chunk.size);
+        vacate(world, chunk.key);
+        backendEvictChunk(world, chunk.key);
+        evictedChunks.add(chunk);
+    }
+
+    /**
+     * 世界卸载：一次性释放该世界的区块成员、计数、占用位图、后端结构与排队中的批次，
+     * 条目直接从反向索引与移动跟踪中摘除，不再经过分片清理队列，卸载后的世界不占用任何内存
+     * @return 释放的条目数
+     */
+    @Override
+    public int unloadWorld(World world) {
+        UUID worldId = world.getUID();
+        int released = 0;
+
+        LongObjectMap<ChunkMembers> worldChunks = chunkMembers.remove(worldId);
+        if (worldChunks != null) {
+            for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+                ChunkMembers chunk = worldChunks.valueAt(c);
+                if (chunk != null) {
+                    released += releaseChunk(chunk);
+                }
+            }
+        }
+        // 已卸载但还没清理完的区块
+        for (Iterator<ChunkMembers> it = evictedChunks.iterator(); it.hasNext(); ) {
+            ChunkMembers chunk = it.next();
+            if (chunk.size > 0 && chunk.entries[0].world == world) {
+                releaseChunk(chunk);
+                it.remove();
+            }
+        }
+        pendingLoads.removeIf(pending -> pending.world == world);
+
+        worldItemCount.remove(worldId);
+        occupancy.remove(worldId);
+        dirtyWorlds.add(worldId);
+        backendUnloadWorld(worldId);
+        repairCounters();
+        return released;
+    }
+
+    /**
+     * 把区块内的条目直接摘除（世界卸载时使用，后端结构随后整体释放）
+     */
+    private int releaseChunk(ChunkMembers chunk) {
+        chunk.evicted = true;
+        int n = chunk.size;
+        for (int i = 0; i < n; i++) {
+            Entry entry = chunk.entries[i];
+            if (idToEntry.get(entry.entityId) == entry) {
+                idToEntry.remove(entry.entityId);
+            }
+            markSettled(entry);
+            notifyRemoved(entry);
+            entry.bucket = null;
+            entry.node = null;
+            chunk.entries[i] = null;
+        }
+        chunk.size = 0;
+        return n;
+    }
+
+    /**
+     * 按每tick预算处理区块登记与卸载善后，未完成的部分下一tick继续
+     */
+    private void processLifecycleQueue() {
+        int budget = LIFECYCLE_BUDGET_PER_TICK;
+
+        // 先清理已卸载区块的反向索引与后端条目
+        while (budget > 0 && !evictedChunks.isEmpty()) {
+            ChunkMembers chunk = evictedChunks.peek();
+            while (budget > 0 && chunk.size > 0) {
+                Entry entry = chunk.entries[chunk.size - 1];
+                if (idToEntry.get(entry.entityId) == entry) {
+                    idToEntry.remove(entry.entityId);
+                }
+                markSettled(entry);
+                chunk.remove(entry);
+                backendRemove(entry);
+                notifyRemoved(entry);
+                budget--;
+            }
+            if (chunk.size > 0) break; // 预算用完，下一tick继续
+            evictedChunks.poll();
+        }
+
+        // 再登记新加载区块中的物品
+        while (budget > 0 && !pendingLoads.isEmpty()) {
+            PendingChunk pending = pendingLoads.peek();
+            while (budget > 0 && pending.cursor < pending.items.size()) {
+                Item item = pending.items.get(pending.cursor++);
+                // 排队期间区块可能又被卸载，registerItem 会跳过失效实体
+                if (item.getWorld() == pending.world) {
+                    registerItem(item);
+                }
+                budget--;
+            }
+            if (pending.cursor < pending.items.size()) break;
+            pendingLoads.poll();
+        }
+    }
+
+    @Override
+    public int getPendingChunkCount() {
+        return pendingLoads.size();
+    }
+
+    // ========== 移动跟踪 ==========
+
+    /**
+     * 加入移动跟踪（已在跟踪中则只重置静止计数）
+     */
+    private void markMoving(Entry entry) {
+        entry.stillTicks = 0;
+        if (entry.movingSlot >= 0) return;
+        if (movingCount == movingEntries.length) {
+            movingEntries = Arrays.copyOf(movingEntries, movingCount << 1);
+        }
+        entry.movingSlot = movingCount;
+        movingEntries[movingCount++] = entry;
+    }
+
+    /**
+     * 移出移动跟踪
+     */
+    private void markSettled(Entry entry) {
+        int slot = entry.movingSlot;
+        if (slot < 0) return;
+        int last = --movingCount;
+        if (slot != last) {
+            Entry moved = movingEntries[last];
+            movingEntries[slot] = moved;
+            moved.movingSlot = slot;
+        }
+        movingEntries[last] = null;
+        entry.movingSlot = -1;
+    }
+
+    @Override
+    public void wakeItem(Item item) {
+        Entry entry = idToEntry.get(item.getEntityId());
+        if (entry != null) {
+            markMoving(entry);
+        }
+    }
+
+    @Override
+    public void wakeArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        if (world == null || !chunkMembers.containsKey(world.getUID())) return;
+
+        // 向外扩1格，覆盖紧贴区域边缘的物品（上界为开区间）
+        wakeMinX = minX - 1;
+        wakeMinY = minY - 1;
+        wakeMinZ = minZ - 1;
+        wakeMaxX = maxX + 2;
+        wakeMaxY = maxY + 2;
+        wakeMaxZ = maxZ + 2;
+        // 用区域的外接球做后端查询，再按区域边界过滤
+        double hx = (wakeMaxX - wakeMinX) * 0.5;
+        double hy = (wakeMaxY - wakeMinY) * 0.5;
+        double hz = (wakeMaxZ - wakeMinZ) * 0.5;
+        backendQuery(world, wakeMinX + hx, wakeMinY + hy, wakeMinZ + hz,
+                Math.sqrt(hx * hx + hy * hy + hz * hz), wakeVisitor);
+    }
+
+    @Override
+    public int getMovingCount() {
+        return movingCount;
+    }
+
+    // ========== 清理 ==========
+
+    @Override
+    public void startCleanupTask() {
+        if (cleanupTask != null) return;
+        cleanupTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                cleanupStep();
+            }
+        };
+        cleanupTask.runTaskTimer(plugin, 1, 1);
+    }
+
+    @Override
+    public void stopTasks() {
+        if (snapshotTask != null) {
+            snapshotTask.cancel();
+            snapshotTask = null;
+        }
+        if (cleanupTask != null) {
+            cleanupTask.cancel();
+            cleanupTask = null;
+        }
+    }
+
+    /**
+     * 增量清理一步：从游标处检查一段槽位，实体已不存在的条目交给 unregister 移除（同步区块、后端与计数）
+     * 每tick检查的槽位数按表容量均摊，索引再大一轮清扫也在 CLEANUP_SWEEP_TICKS 内完成
+     */
+    private void cleanupStep() {
+        int capacity = idToEntry.capacity();
+        int budget = Math.max(CLEANUP_MIN_SLOTS_PER_TICK, (capacity + CLEANUP_SWEEP_TICKS - 1) / CLEANUP_SWEEP_TICKS);
+        int end = Math.min(capacity, cleanupCursor + budget);
+
+        for (int i = cleanupCursor; i < end; i++) {
+            Entry entry = idToEntry.valueAt(i);
+            // 移动中的条目每tick都会被快照任务解析，无需重复检查
+            if (entry != null && entry.movingSlot < 0 && !entry.stale) {
+                resolve(entry);
+                if (entry.stale) {
+                    sweepReclaimed++;
+                }
+            }
+        }
+        removeStaleEntries();
+        cleanupCursor = end;
+
+        if (cleanupCursor >= capacity) {
+            // 一轮清扫结束：校正计数并从头开始
+            repairCounters();
+            lastSweepReclaimed = sweepReclaimed;
+            totalReclaimed += sweepReclaimed;
+            sweepReclaimed = 0;
+            cleanupCursor = 0;
+            completedSweeps++;
+
+            if (lastSweepReclaimed > 0 && plugin.getConfig().getBoolean("debug", false)) {
+                plugin.getLogger().info("清理了 " + lastSweepReclaimed + " 个无效物品引用");
+            }
+        }
+    }
+
+    @Override
+    public int cleanupInvalidItems() {
+        int cleaned = 0;
+        for (int i = 0, cap = idToEntry.capacity(); i < cap; i++) {
+            Entry entry = idToEntry.valueAt(i);
+            if (entry != null && entry.movingSlot < 0 && !entry.stale) {
+                resolve(entry); // 实体不存在时标记为待移除
+                if (entry.stale) cleaned++;
+            }
+        }
+
+        // 统一走 unregister，保证区块、后端与计数同步
+        removeStaleEntries();
+        repairCounters();
+        totalReclaimed += cleaned;
+        return cleaned;
+    }
+
+    /**
+     * 按区块成员的实际数量校正总数与各世界计数（只遍历区块，不遍历物品）
+     */
+    private void repairCounters() {
+        int total = 0;
+        for (Map.Entry<UUID, LongObjectMap<ChunkMembers>> worldEntry : chunkMembers.entrySet()) {
+            int worldTotal = 0;
+            LongObjectMap<ChunkMembers> worldChunks = worldEntry.getValue();
+            for (int c = 0, cap = worldChunks.capacity(); c < cap; c++) {
+                ChunkMembers chunk = worldChunks.valueAt(c);
+                if (chunk != null) worldTotal += chunk.size;
+            }
+            total += worldTotal;
+
+            AtomicInteger count = worldItemCount.get(worldEntry.getKey());
+            if (count == null) {
+                if (worldTotal > 0) {
+                    worldItemCount.put(worldEntry.getKey(), new AtomicInteger(worldTotal));
+                }
+            } else if (count.get() != worldTotal) {
+                count.set(worldTotal);
+            }
+        }
+        // 已没有任何区块的世界
+        worldItemCount.keySet().removeIf(worldId -> !chunkMembers.containsKey(worldId));
+
+        if (total != indexedCount && plugin.getConfig().getBoolean("debug", false)) {
+            plugin.getLogger().info("索引计数已校正: " + indexedCount + " -> " + total);
+        }
+        indexedCount = total;
+    }
+
+    @Override
+    public int getLastSweepReclaimed() {
+        return lastSweepReclaimed;
+    }
+
+    @Override
+    public long getTotalReclaimed() {
+        return totalReclaimed;
+    }
+
+    @Override
+    public int getCompletedSweeps() {
+        return completedSweeps;
+    }
+
+    // ================== 辅助方法 ==================
+
+    /**
+     * 计算网格边长
+     * @param configured 配置值（0 表示自动）
+     * @param maxQueryRange 最大的查询半径（拾取半径与合并半径取大）
+     * @return 2、4、8 或 16
+     */
+    static int resolveCellSize(int configured, double maxQueryRange) {
+        if (configured > 0) {
+            // 向上取到 2 的幂，并限制在 [2, 16]
+            int size = Integer.highestOneBit(Math.max(2, Math.min(16, configured)));
+            return size < configured ? Math.min(16, size << 1) : size;
+        }
+        // 自动：让查询直径不超过一个网格，这样一次查询最多覆盖 2×2 个网格
+        int size = 2;
+        while (size < 16 && size < maxQueryRange * 2) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * 将区块坐标打包为 long 键（高32位为x，低32位为z）
+     */
+    static long chunkKey(int chunkX, int chunkZ) {
+        return ((long) chunkX << 32) | (chunkZ & 0xFFFFFFFFL);
+    }
+
+    static int chunkKeyX(long key) {
+        return (int) (key >> 32);
+    }
+
+    static int chunkKeyZ(long key) {
+        return (int) key;
+    }
+
+    /**
+     * 坐标 v 到区间 [start, start + size) 的距离（在区间内为0）
+     */
+    static double axisGap(double v, int start, int size) {
+        if (v < start) return start - v;
+        double end = start + size;
+        return v > end ? v - end : 0.0;
+    }
+
+    private static String chunkKeyToString(long key) {
+        return "(" + chunkKeyX(key) + "," + chunkKeyZ(key) + ")";
+    }
+
+    // ================== 辅助类 ==================
+
+    /**
+     * 索引条目：物品的实体ID/UUID、快照坐标及其在区块成员表与后端桶中的位置（不持有实体对象）
+     */
+    protected static final class Entry {
+        int entityId;          // 跨维度传送后实体被替换，ID随之改变
+        final UUID uuid;
+        boolean stale;         // 实体已不存在，等待移除
+        World world;
+        double x, y, z;        // 快照坐标
+        ChunkMembers chunk;
+        int chunkSlot;         // 在 chunk.entries 中的下标
+        Bucket bucket;         // 后端桶
+        int bucketSlot;        // 在 bucket 中的下标
+        long cellKey;          // 后端自用的网格键
+        Object node;           // 后端自用的节点引用
+        int movingSlot = -1;   // 在 movingEntries 中的下标，-1 表示静止
+        int stillTicks;        // 连续静止的快照次数
+
+        Entry(int entityId, UUID uuid) {
+            this.entityId = entityId;
+            this.uuid = uuid;
+        }
+    }
+
+    /**
+     * 待登记的区块实体批次
+     */
+    private static final class PendingChunk {
+        final World world;
+        final List<Item> items;
+        int cursor; // 下一个待登记的下标
+
+        PendingChunk(World world, List<Item> items) {
+            this.world = world;
+            this.items = items;
+        }
+    }
+
+    /**
+     * 区块成员表：区块内所有条目的紧凑数组，删除时用末尾元素填补空位
+     */
+    static final class ChunkMembers {
+        final long key;
+        Entry[] entries = new Entry[4];
+        int size;
+        boolean evicted; // 区块已卸载、已从索引摘除，仅等待清理反向索引
+
+        ChunkMembers(long key) {
+            this.key = key;
+        }
+
+        void add(Entry entry) {
+            if (size == entries.length) {
+                entries = Arrays.copyOf(entries, size << 1);
+            }
+            entry.chunk = this;
+            entry.chunkSlot = size;
+            entries[size++] = entry;
+        }
+
+        void remove(Entry entry) {
+            int slot = entry.chunkSlot;
+            int last = --size;
+            if (slot != last) {
+                Entry moved = entries[last];
+                entries[slot] = moved;
+                moved.chunkSlot = slot;
+            }
+            entries[last] = null;
+        }
+    }
+
+    /**
+     * 后端桶：紧凑数组，删除时用末尾元素填补空位
+     * 条目与坐标快照按相同下标平行存放（结构数组），距离计算只顺序读取 double 数组
+     */
+    static final class Bucket {
+        private static final RangeFilter RANGE_FILTER = RangeFilter.get();
+
+        Entry[] entries = new Entry[4];
+        double[] xs = new double[4];
+        double[] ys = new double[4];
+        double[] zs = new double[4];
+        int[] ids = new int[4];
+        int size;
+        boolean evicted; // 所属结构已被整块摘除，条目移除时无需再维护
+
+        void add(Entry entry) {
+            if (size == entries.length) {
+                int capacity = size << 1;
+                entries = Arrays.copyOf(entries, capacity);
+                xs = Arrays.copyOf(xs, capacity);
+                ys = Arrays.copyOf(ys, capacity);
+                zs = Arrays.copyOf(zs, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            entry.bucket = this;
+            entry.bucketSlot = size;
+            entries[size] = entry;
+            xs[size] = entry.x;
+            ys[size] = entry.y;
+            zs[size] = entry.z;
+            ids[size] = entry.entityId;
+            size++;
+        }
+
+        /** 把条目的快照坐标写入桶内数组 */
+        void update(Entry entry) {
+            int slot = entry.bucketSlot;
+            xs[slot] = entry.x;
+            ys[slot] = entry.y;
+            zs[slot] = entry.z;
+        }
+
+        void remove(Entry entry) {
+            int slot = entry.bucketSlot;
+            int last = --size;
+            if (slot != last) {
+                Entry moved = entries[last];
+                entries[slot] = moved;
+                moved.bucketSlot = slot;
+                xs[slot] = xs[last];
+                ys[slot] = ys[last];
+                zs[slot] = zs[last];
+                ids[slot] = ids[last];
+            }
+            entries[last] = null;
+            entry.bucket = null;
+        }
+
+        /**
+         * 按距离平方过滤并回调桶内条目
+         * 每 64 个条目为一段，先批量算出命中位掩码（可用时走 SIMD），再只回调命中的条目
+         * @return 完整遍历返回true，被回调提前结束返回false
+         */
+        boolean scan(double cx, double cy, double cz, double rangeSq, EntryVisitor visitor) {
+            for (int from = 0, n = size; from < n; from += RangeFilter.BLOCK) {
+                long hits = RANGE_FILTER.mask(xs, ys, zs, from, Math.min(RangeFilter.BLOCK, n - from),
+                        cx, cy, cz, rangeSq);
+                while (hits != 0) {
+                    if (!visitor.visit(entries[from + Long.numberOfTrailingZeros(hits)])) {
+                        return false;
+                    }
+                    hits &= hits - 1;
+                }
+            }
+            return true;
+        }
+    }
+}
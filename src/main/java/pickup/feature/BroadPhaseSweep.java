@@ -0,0 +1,172 @@
+package pickup.feature;
+
+import org.bukkit.World;
+
+import java.util.Arrays;
+
+/**
+ * 排序-扫描（sort and sweep）粗筛
+ * 把一个世界中的拾取者与物品按 x 坐标分别排序，再用一次双指针扫描找出 x 方向相距不超过拾取范围的所有组合，
+ * 逐对精确比较距离后交给回调；每个世界每tick只需 O((N+M) log(N+M))，不再为每名玩家/每个物品单独查询。
+ * 排序键为定点数 x 坐标（1/16 方块精度）与数组下标打包成的 long，直接使用基本类型排序；
+ * 扫描窗口按量化误差放宽，最终结果只由精确距离决定。
+ * 数组在多次调用间复用，只在主线程使用。
+ */
+final class BroadPhaseSweep implements SpatialIndex.PositionVisitor {
+
+    // 定点精度：x 坐标乘以 16 后取整（世界边界 ±3000万格在 31 位以内）
+    private static final double KEY_SCALE = 16.0;
+    private static final double KEY_QUANTUM = 1.0 / KEY_SCALE;
+
+    /**
+     * 候选组合回调
+     */
+    @FunctionalInterface
+    interface PairVisitor {
+        /**
+         * @param picker 拾取者下标（addPicker 的返回值）
+         * @param entityId 物品实体ID
+         * @param distanceSq 两者快照坐标的距离平方
+         */
+        void pair(int picker, int entityId, double distanceSq);
+    }
+
+    // 拾取者
+    private double[] pickerX = new double[16], pickerY = new double[16], pickerZ = new double[16];
+    private long[] pickerKeys = new long[16];
+    private int pickerCount;
+
+    // 物品（来自索引快照）
+    private int[] itemIds = new int[256];
+    private double[] itemX = new double[256], itemY = new double[256], itemZ = new double[256];
+    private long[] itemKeys = new long[256];
+    private int itemCount;
+
+    // 统计：上一次扫描的规模与产生的组合数
+    private int lastPickers, lastItems, lastPairs;
+
+    /**
+     * 清空拾取者，开始新一轮
+     */
+    void clearPickers() {
+        pickerCount = 0;
+    }
+
+    /**
+     * 加入拾取者
+     * @return 拾取者下标
+     */
+    int addPicker(double x, double y, double z) {
+        if (pickerCount == pickerX.length) {
+            int capacity = pickerCount << 1;
+            pickerX = Arrays.copyOf(pickerX, capacity);
+            pickerY = Arrays.copyOf(pickerY, capacity);
+            pickerZ = Arrays.copyOf(pickerZ, capacity);
+            pickerKeys = Arrays.copyOf(pickerKeys, capacity);
+        }
+        pickerX[pickerCount] = x;
+        pickerY[pickerCount] = y;
+        pickerZ[pickerCount] = z;
+        pickerKeys[pickerCount] = sortKey(x, pickerCount);
+        return pickerCount++;
+    }
+
+    int getPickerCount() {
+        return pickerCount;
+    }
+
+    /**
+     * 从索引复制世界中所有物品的快照坐标（不解析实体）
+     * @return 物品数量
+     */
+    int loadItems(SpatialIndex index, World world) {
+        itemCount = 0;
+        index.forEachPosition(world, this);
+        return itemCount;
+    }
+
+    @Override
+    public void visit(int entityId, double x, double y, double z) {
+        if (itemCount == itemIds.length) {
+            int capacity = itemCount << 1;
+            itemIds = Arrays.copyOf(itemIds, capacity);
+            itemX = Arrays.copyOf(itemX, capacity);
+            itemY = Arrays.copyOf(itemY, capacity);
+            itemZ = Arrays.copyOf(itemZ, capacity);
+            itemKeys = Arrays.copyOf(itemKeys, capacity);
+        }
+        itemIds[itemCount] = entityId;
+        itemX[itemCount] = x;
+        itemY[itemCount] = y;
+        itemZ[itemCount] = z;
+        itemKeys[itemCount] = sortKey(x, itemCount);
+        itemCount++;
+    }
+
+    /**
+     * 排序并扫描，对每个距离不超过 range 的（拾取者, 物品）组合调用回调
+     * 回调中可以修改索引（物品坐标已复制）
+     * @return 产生的组合数
+     */
+    int sweep(double range, PairVisitor visitor) {
+        lastPickers = pickerCount;
+        lastItems = itemCount;
+        lastPairs = 0;
+        if (pickerCount == 0 || itemCount == 0) return 0;
+
+        Arrays.sort(pickerKeys, 0, pickerCount);
+        Arrays.sort(itemKeys, 0, itemCount);
+
+        double rangeSq = range * range;
+        int start = 0;
+        for (int p = 0; p < pickerCount; p++) {
+            long pickerKey = pickerKeys[p];
+            int picker = (int) pickerKey;
+            double px = pickerX[picker], py = pickerY[picker], pz = pickerZ[picker];
+
+            // 拾取者按量化 x 递增，窗口起点只会右移（按量化坐标比较并放宽一个量化步长，保证不漏掉物品）
+            double minKeyX = keyX(pickerKey) - range - KEY_QUANTUM;
+            while (start < itemCount && keyX(itemKeys[start]) < minKeyX) {
+                start++;
+            }
+            for (int i = start; i < itemCount; i++) {
+                long key = itemKeys[i];
+                if (keyX(key) > px + range) break; // 量化坐标不大于真实坐标
+                int item = (int) key;
+                double dx = itemX[item] - px, dy = itemY[item] - py, dz = itemZ[item] - pz;
+                double distSq = dx * dx + dy * dy + dz * dz;
+                if (distSq <= rangeSq) {
+                    lastPairs++;
+                    visitor.pair(picker, itemIds[item], distSq);
+                }
+            }
+        }
+        return lastPairs;
+    }
+
+    int getLastPickers() {
+        return lastPickers;
+    }
+
+    int getLastItems() {
+        return lastItems;
+    }
+
+    int getLastPairs() {
+        return lastPairs;
+    }
+
+    /**
+     * 排序键：高32位为定点 x 坐标，低32位为数组下标
+     */
+    private static long sortKey(double x, int index) {
+        return ((long) Math.floor(x * KEY_SCALE) << 32) | index;
+    }
+
+    /**
+     * 排序键中的 x 坐标（量化后）
+     */
+    private static double keyX(long key) {
+        return (key >> 32) * KEY_QUANTUM;
+    }
+}
@@ -0,0 +1,92 @@
+package pickup.feature;
+
+import pickup.tool.LongObjectMap;
+
+/**
+ * 区块占用位图（单个世界）
+ * 两级结构：区域（32×32区块）-> 1024 位的位图。某个区块的位被置1，表示它自身或周围8个区块中至少有一个区块存有物品，
+ * 即站在该区块内的玩家在拾取半径（不超过16格）内可能有物品；为0则可以直接跳过拾取检测。
+ * 每个区块同时记录 3×3 邻域内有物品的区块数，区块占用状态变化时只需更新9个计数。
+ * 非线程安全，仅供主线程使用。
+ */
+final class ChunkOccupancy {
+    // 区域键 -> 区域位图
+    private final LongObjectMap<Region> regions = new LongObjectMap<>();
+
+    /**
+     * 区块从无物品变为有物品
+     */
+    void chunkOccupied(int chunkX, int chunkZ) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                increment(chunkX + dx, chunkZ + dz);
+            }
+        }
+    }
+
+    /**
+     * 区块从有物品变为无物品（或被卸载）
+     */
+    void chunkVacated(int chunkX, int chunkZ) {
+        for (int dx = -1; dx <= 1; dx++) {
+            for (int dz = -1; dz <= 1; dz++) {
+                decrement(chunkX + dx, chunkZ + dz);
+            }
+        }
+    }
+
+    /**
+     * 站在指定区块内时，拾取范围内是否可能有物品（单次位测试）
+     */
+    boolean isNearOccupied(int chunkX, int chunkZ) {
+        Region region = regions.get(AbstractSpatialIndex.chunkKey(chunkX >> 5, chunkZ >> 5));
+        if (region == null) return false;
+        int bit = localIndex(chunkX, chunkZ);
+        return (region.bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    boolean isEmpty() {
+        return regions.isEmpty();
+    }
+
+    private void increment(int chunkX, int chunkZ) {
+        long key = AbstractSpatialIndex.chunkKey(chunkX >> 5, chunkZ >> 5);
+        Region region = regions.get(key);
+        if (region == null) {
+            region = new Region();
+            regions.put(key, region);
+        }
+        int bit = localIndex(chunkX, chunkZ);
+        if (region.counts[bit]++ == 0) {
+            region.bits[bit >>> 6] |= 1L << bit;
+            region.occupied++;
+        }
+    }
+
+    private void decrement(int chunkX, int chunkZ) {
+        long key = AbstractSpatialIndex.chunkKey(chunkX >> 5, chunkZ >> 5);
+        Region region = regions.get(key);
+        if (region == null) return;
+        int bit = localIndex(chunkX, chunkZ);
+        if (region.counts[bit] == 0) return;
+        if (--region.counts[bit] == 0) {
+            region.bits[bit >>> 6] &= ~(1L << bit);
+            if (--region.occupied == 0) {
+                regions.remove(key);
+            }
+        }
+    }
+
+    private static int localIndex(int chunkX, int chunkZ) {
+        return ((chunkX & 31) << 5) | (chunkZ & 31);
+    }
+
+    /**
+     * 区域：32×32 个区块的位图及邻域计数
+     */
+    private static final class Region {
+        final long[] bits = new long[16];
+        final byte[] counts = new byte[1024]; // 3×3 邻域内有物品的区块数（0~9）
+        int occupied; // 位为1的区块数
+    }
+}
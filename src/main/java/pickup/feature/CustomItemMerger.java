@@ -2,17 +2,15 @@ package pickup.feature;
 
 import org.bukkit.Location;
 import org.bukkit.Material;
-import org.bukkit.NamespacedKey;
 import org.bukkit.World;
+import org.bukkit.entity.Entity;
 import org.bukkit.entity.Item;
 import org.bukkit.inventory.ItemStack;
-import org.bukkit.persistence.PersistentDataContainer;
-import org.bukkit.persistence.PersistentDataType;
 import org.bukkit.plugin.java.JavaPlugin;
 import org.bukkit.scheduler.BukkitRunnable;
+import pickup.tool.LongObjectMap;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * 自定义物品合并器
@@ -32,8 +30,25 @@ public class CustomItemMerger {
     // 定时任务对象
     private BukkitRunnable mergeTask = null;
 
-    // 记录处于"主动期"内的物品及其元数据（线程安全的Map）
-    private final Map<Item, ItemEntry> activeEntries = new ConcurrentHashMap<>();
+    // 记录处于"主动期"内的物品及其元数据：实体ID -> 条目（仅主线程访问）
+    // 只保存ID/UUID，不持有实体对象；到达扫描时间时才解析实体
+    private final LongObjectMap<ItemEntry> activeEntries = new LongObjectMap<>();
+    // 每tick遍历前复制出的实体ID（遍历过程中合并会增删 activeEntries）
+    private long[] scanIds = new long[64];
+
+    // 复用的位置对象（主线程使用），读取索引快照坐标
+    private final Location sourceLocation = new Location(null, 0, 0, 0);
+    // 范围查询期间的合并源与找到的目标（主线程使用），合并在遍历结束后执行
+    private Item mergeSource;
+    private Item mergeTarget;
+    private final SpatialIndex.ItemVisitor mergeTargetFinder = candidate -> {
+        if (candidate == mergeSource) return true; // 跳过自身
+        if (canMerge(mergeSource, candidate)) {
+            mergeTarget = candidate;
+            return false; // 一次只合并一个，找到即停止遍历
+        }
+        return true;
+    };
 
     // 黑名单：禁止合并的物品类型
     private static final Set<Material> BLACKLISTED = Set.of(
@@ -72,31 +87,41 @@ public class CustomItemMerger {
             public void run() {
                 if (!running) return; // 检查运行状态
 
-                // 遍历所有活跃物品
-                Iterator<Map.Entry<Item, ItemEntry>> iter = activeEntries.entrySet().iterator();
-                while (iter.hasNext()) {
-                    Map.Entry<Item, ItemEntry> entry = iter.next();
-                    Item item = entry.getKey();
-                    ItemEntry meta = entry.getValue();
-
-                    // 检查物品是否有效
-                    if (item == null || !item.isValid() || item.isDead()) {
-                        iter.remove();
-                        continue;
+                // 先复制出所有活跃物品的ID
+                int count = 0;
+                if (scanIds.length < activeEntries.size()) {
+                    scanIds = new long[Integer.highestOneBit(activeEntries.size()) << 1];
+                }
+                for (int slot = 0, cap = activeEntries.capacity(); slot < cap; slot++) {
+                    if (activeEntries.valueAt(slot) != null) {
+                        scanIds[count++] = activeEntries.keyAt(slot);
                     }
+                }
+
+                // 遍历所有活跃物品
+                for (int i = 0; i < count; i++) {
+                    long id = scanIds[i];
+                    ItemEntry meta = activeEntries.get(id);
+                    if (meta == null) continue; // 本tick已被合并移除
 
-                    World world = item.getWorld();
-                    long currentTick = world.getFullTime(); // 使用游戏世界的时间（tick）
+                    long currentTick = meta.world.getGameTime(); // 与物品状态表相同的时钟（不受 /time set 与睡觉影响）
 
                     // 检查是否已过活跃期
                     if (currentTick - meta.spawnTick >= activeDurationTicks) {
-                        iter.remove(); // 从活跃列表中移除
+                        activeEntries.remove(id); // 从活跃列表中移除
                         continue;
                     }
 
                     // 检查是否到达扫描时间
                     if (currentTick - meta.lastScanTick >= scanIntervalTicks) {
                         meta.lastScanTick = currentTick; // 更新上次扫描时间
+
+                        // 到扫描时间才解析实体，检查物品是否有效
+                        Item item = meta.resolve();
+                        if (item == null) {
+                            activeEntries.remove(id);
+                            continue;
+                        }
                         tryMergeWithNearby(item); // 尝试合并
                     }
                 }
@@ -118,6 +143,27 @@ public class CustomItemMerger {
         activeEntries.clear(); // 清空活跃物品列表
     }
 
+    /**
+     * 世界卸载：移除该世界中的所有活跃条目（条目持有 World 引用）
+     * @param world 正在卸载的世界
+     */
+    public void unloadWorld(World world) {
+        // 先收集再删除（开放寻址表删除时会移动其他条目）
+        int count = 0;
+        if (scanIds.length < activeEntries.size()) {
+            scanIds = new long[Integer.highestOneBit(activeEntries.size()) << 1];
+        }
+        for (int slot = 0, cap = activeEntries.capacity(); slot < cap; slot++) {
+            ItemEntry meta = activeEntries.valueAt(slot);
+            if (meta != null && meta.world == world) {
+                scanIds[count++] = activeEntries.keyAt(slot);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            activeEntries.remove(scanIds[i]);
+        }
+    }
+
     /**
      * 通知有新的物品可以合并
      * 通常在物品生成或掉落时调用
@@ -133,7 +179,14 @@ public class CustomItemMerger {
         if (stack.getAmount() >= stack.getMaxStackSize()) return; // 已满堆跳过
 
         // 将物品添加到活跃列表，记录生成时间
-        activeEntries.put(item, new ItemEntry(item.getWorld().getFullTime()));
+        activeEntries.put(item.getEntityId(), new ItemEntry(item, item.getWorld().getGameTime()));
+    }
+
+    /**
+     * 物品已被拾取、即将移除：不再作为合并源
+     */
+    public void forgetItem(Item item) {
+        activeEntries.remove(item.getEntityId());
     }
 
     /**
@@ -143,39 +196,37 @@ public class CustomItemMerger {
     private void tryMergeWithNearby(Item source) {
         if (!source.isValid() || source.isDead()) return;
 
-        Location loc = source.getLocation();
+        SpatialIndex index = getSpatialIndex();
+        if (index == null) return;
+
+        // 源物品坐标取自索引快照，范围查询同样只读快照
+        Location loc = index.readPosition(source, sourceLocation);
         World world = loc.getWorld();
         if (world == null) return;
 
-        // 获取范围内的所有实体
-        Collection<Item> nearby = new ArrayList<>();
-        for (org.bukkit.entity.Entity entity : world.getNearbyEntities(loc, mergeRange, mergeRange, mergeRange)) {
-            if (entity instanceof Item) {
-                nearby.add((Item) entity);
-            }
-        }
-
-        // 遍历附近物品，寻找可合并的目标
-        for (Item target : nearby) {
-            if (target == source) continue; // 跳过自身
-            if (!target.isValid() || target.isDead()) continue; // 检查有效性
-
-            if (canMerge(source, target)) {
-                performMerge(source, target); // 执行合并
-
-                activeEntries.remove(target); // 从活跃列表中移除被合并的物品
-
-                // 如果源物品仍未满堆，重新添加到活跃列表
-                ItemStack stack = source.getItemStack();
-                if (stack.getAmount() < stack.getMaxStackSize()) {
-                    // 从持久化数据中读取生成时间
-                    NamespacedKey spawnTickKey = new NamespacedKey(plugin, "spawn_tick");
-                    long newSpawnTick = source.getPersistentDataContainer()
-                            .getOrDefault(spawnTickKey, PersistentDataType.LONG, world.getFullTime());
-                    activeEntries.put(source, new ItemEntry(newSpawnTick));
-                }
-                break; // 一次只合并一个，防止连锁反应和性能问题
+        // 遍历附近物品寻找可合并的目标（遍历中不修改索引，找到第一个即停止）
+        mergeSource = source;
+        mergeTarget = null;
+        index.forEachNearby(loc, mergeRange, mergeTargetFinder);
+        Item target = mergeTarget;
+        mergeSource = null;
+        mergeTarget = null;
+        if (target == null) return;
+
+        performMerge(source, target); // 执行合并
+
+        activeEntries.remove(target.getEntityId()); // 从活跃列表中移除被合并的物品
+
+        // 如果源物品仍未满堆，重新添加到活跃列表
+        ItemStack stack = source.getItemStack();
+        if (stack.getAmount() < stack.getMaxStackSize()) {
+            // 从物品状态表中读取生成时间
+            ItemStateTable states = getItemStates();
+            long newSpawnTick = states != null ? states.spawnTick(states.slotOf(source)) : ItemStateTable.NO_TICK;
+            if (newSpawnTick == ItemStateTable.NO_TICK) {
+                newSpawnTick = world.getGameTime();
             }
+            activeEntries.put(source.getEntityId(), new ItemEntry(source, newSpawnTick));
         }
     }
 
@@ -193,8 +244,11 @@ public class CustomItemMerger {
         if (s1.getType() != s2.getType()) return false;
         // 检查合并后是否会超过最大堆叠数
         if (s1.getAmount() + s2.getAmount() > s1.getMaxStackSize()) return false;
-        // 检查物品元数据是否相同（NBT数据等）
-        return Objects.equals(s1.getItemMeta(), s2.getItemMeta());
+        // 先比较按实体缓存的指纹，不同即不能合并（避免每次复制两份元数据）
+        ItemStateTable states = getItemStates();
+        if (states != null && states.fingerprint(item1, s1) != states.fingerprint(item2, s2)) return false;
+        // 指纹相同再完整比较物品元数据（NBT数据等）
+        return s1.isSimilar(s2);
     }
 
     /**
@@ -205,39 +259,10 @@ public class CustomItemMerger {
     private void performMerge(Item keep, Item remove) {
         if (!keep.isValid() || !remove.isValid()) return;
 
-        // 获取两个物品的持久化数据容器
-        PersistentDataContainer keepPdc = keep.getPersistentDataContainer();
-        PersistentDataContainer removePdc = remove.getPersistentDataContainer();
-
-        // 定义持久化数据的键
-        NamespacedKey spawnTickKey = new NamespacedKey(plugin, "spawn_tick");
-        NamespacedKey sourceKey = new NamespacedKey(plugin, "source");
-        NamespacedKey droppedByKey = new NamespacedKey(plugin, "dropped_by");
-
-        // 获取两个物品的生成时间
-        long keepSpawnTick = keepPdc.getOrDefault(spawnTickKey, PersistentDataType.LONG, 0L);
-        long removeSpawnTick = removePdc.getOrDefault(spawnTickKey, PersistentDataType.LONG, 0L);
-
-        // 如果被移除的物品更新（生成时间更晚），则将其数据转移到保留的物品上
-        if (removeSpawnTick > keepSpawnTick) {
-            // 更新生成时间
-            keepPdc.set(spawnTickKey, PersistentDataType.LONG, removeSpawnTick);
-
-            // 转移来源信息
-            String source = removePdc.get(sourceKey, PersistentDataType.STRING);
-            if (source != null) {
-                keepPdc.set(sourceKey, PersistentDataType.STRING, source);
-            } else {
-                keepPdc.remove(sourceKey);
-            }
-
-            // 转移掉落者信息
-            String droppedByStr = removePdc.get(droppedByKey, PersistentDataType.STRING);
-            if (droppedByStr != null) {
-                keepPdc.set(droppedByKey, PersistentDataType.STRING, droppedByStr);
-            } else {
-                keepPdc.remove(droppedByKey);
-            }
+        // 如果被移除的物品更新（生成时间更晚），则将其生成时间、来源与掉落者转移到保留的物品上
+        ItemStateTable states = getItemStates();
+        if (states != null) {
+            states.transfer(keep, remove);
         }
 
         // 合并物品堆叠数量
@@ -253,15 +278,35 @@ public class CustomItemMerger {
         remove.remove();
 
         // 从活跃列表中移除被合并的物品
-        activeEntries.remove(remove);
+        activeEntries.remove(remove.getEntityId());
 
         // ✅ 新增：从空间索引中移除被合并的物品
+        SpatialIndex index = getSpatialIndex();
+        if (index != null) {
+            index.unregisterItem(remove);
+        }
+    }
+
+    /**
+     * 获取拾取管理器的物品状态表
+     * @return 状态表，插件不是 PickUp 主类或管理器未创建时返回null
+     */
+    private ItemStateTable getItemStates() {
+        if (plugin instanceof pickup.Main pickupPlugin && pickupPlugin.getPickupManager() != null) {
+            return pickupPlugin.getPickupManager().getItemStates();
+        }
+        return null;
+    }
+
+    /**
+     * 获取插件的空间索引
+     * @return 空间索引，插件不是 PickUp 主类或索引未创建时返回null
+     */
+    private SpatialIndex getSpatialIndex() {
         if (plugin instanceof pickup.Main pickupPlugin) {
-            pickup.feature.ItemSpatialIndex index = pickupPlugin.getItemSpatialIndex();
-            if (index != null) {
-                index.unregisterItem(remove);
-            }
+            return pickupPlugin.getItemSpatialIndex();
         }
+        return null;
     }
 
     /**
@@ -269,16 +314,33 @@ public class CustomItemMerger {
      * 用于记录物品的活跃状态信息
      */
     private static class ItemEntry {
+        final World world;         // 物品所在世界
+        final UUID uuid;           // 物品实体UUID（用于解析实体，不持有实体对象）
         final long spawnTick;      // 物品生成时间（tick）
         long lastScanTick;         // 上次扫描时间（tick）
 
         /**
          * 构造函数
+         * @param item 物品实体
          * @param spawnTick 生成时间
          */
-        ItemEntry(long spawnTick) {
+        ItemEntry(Item item, long spawnTick) {
+            this.world = item.getWorld();
+            this.uuid = item.getUniqueId();
             this.spawnTick = spawnTick;
             this.lastScanTick = spawnTick - 1000; // 初始化为较早时间，确保立即扫描
         }
+
+        /**
+         * 解析物品实体
+         * @return 实体已失效或离开所在世界时返回null
+         */
+        Item resolve() {
+            Entity entity = world.getEntity(uuid);
+            if (entity instanceof Item item && item.isValid() && !item.isDead()) {
+                return item;
+            }
+            return null;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,137 @@
+package pickup.feature;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 空间索引的不可变快照，供异步线程（统计分析、拾取规划等）无锁读取
+ * 由主线程在快照任务末尾发布（写入 volatile 引用），发布后不再修改，任何线程都可以安全读取；
+ * 同一快照内所有世界的坐标都来自同一tick，是一致的视图。
+ * 未变化的世界直接沿用上一份快照中的视图（写时复制），主线程只为发生变化的世界重建数组。
+ * 快照只包含实体ID、UUID与坐标，不包含实体对象；需要操作实体时请回到主线程按UUID解析。
+ */
+public final class IndexSnapshot {
+
+    /** 空快照（尚未发布过） */
+    static final IndexSnapshot EMPTY = new IndexSnapshot(0, Collections.emptyMap());
+
+    private final long tick;
+    private final Map<UUID, WorldView> worlds;
+    private final int totalCount;
+
+    IndexSnapshot(long tick, Map<UUID, WorldView> worlds) {
+        this.tick = tick;
+        this.worlds = worlds;
+        int total = 0;
+        for (WorldView view : worlds.values()) {
+            total += view.size();
+        }
+        this.totalCount = total;
+    }
+
+    /** 发布时的快照任务序号（每tick加1） */
+    public long getTick() {
+        return tick;
+    }
+
+    /** 世界UUID -> 世界视图（只读） */
+    public Map<UUID, WorldView> getWorlds() {
+        return worlds;
+    }
+
+    /** 指定世界的视图，没有物品时返回null */
+    public WorldView getWorld(UUID worldId) {
+        return worlds.get(worldId);
+    }
+
+    public int getTotalCount() {
+        return totalCount;
+    }
+
+    /**
+     * 单个世界的物品视图：按区块键排序的平行数组，区块内物品连续存放
+     */
+    public static final class WorldView {
+        private final long[] chunkKeys;   // 升序
+        private final int[] chunkStart;   // 第 i 个区块的物品起始下标，长度为区块数 + 1
+        private final int[] ids;
+        private final UUID[] uuids;
+        private final double[] xs, ys, zs;
+
+        WorldView(long[] chunkKeys, int[] chunkStart, int[] ids, UUID[] uuids,
+                  double[] xs, double[] ys, double[] zs) {
+            this.chunkKeys = chunkKeys;
+            this.chunkStart = chunkStart;
+            this.ids = ids;
+            this.uuids = uuids;
+            this.xs = xs;
+            this.ys = ys;
+            this.zs = zs;
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public int getChunkCount() {
+            return chunkKeys.length;
+        }
+
+        public int getEntityId(int i) {
+            return ids[i];
+        }
+
+        public UUID getUniqueId(int i) {
+            return uuids[i];
+        }
+
+        public double getX(int i) {
+            return xs[i];
+        }
+
+        public double getY(int i) {
+            return ys[i];
+        }
+
+        public double getZ(int i) {
+            return zs[i];
+        }
+
+        /**
+         * 指定区块内的物品数量
+         */
+        public int countInChunk(int chunkX, int chunkZ) {
+            int c = Arrays.binarySearch(chunkKeys, AbstractSpatialIndex.chunkKey(chunkX, chunkZ));
+            return c < 0 ? 0 : chunkStart[c + 1] - chunkStart[c];
+        }
+
+        /**
+         * 遍历指定坐标附近的物品（按区块二分查找，再按距离精确过滤）
+         * @return 命中的数量
+         */
+        public int forEachNearby(double cx, double cy, double cz, double range, SpatialIndex.PositionVisitor visitor) {
+            double rangeSq = range * range;
+            int minChunkX = (int) Math.floor(cx - range) >> 4;
+            int maxChunkX = (int) Math.floor(cx + range) >> 4;
+            int minChunkZ = (int) Math.floor(cz - range) >> 4;
+            int maxChunkZ = (int) Math.floor(cz + range) >> 4;
+            int hits = 0;
+            for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+                for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+                    int c = Arrays.binarySearch(chunkKeys, AbstractSpatialIndex.chunkKey(chunkX, chunkZ));
+                    if (c < 0) continue;
+                    for (int i = chunkStart[c], end = chunkStart[c + 1]; i < end; i++) {
+                        double dx = xs[i] - cx, dy = ys[i] - cy, dz = zs[i] - cz;
+                        if (dx * dx + dy * dy + dz * dz <= rangeSq) {
+                            hits++;
+                            visitor.visit(ids[i], xs[i], ys[i], zs[i]);
+                        }
+                    }
+                }
+            }
+            return hits;
+        }
+    }
+}
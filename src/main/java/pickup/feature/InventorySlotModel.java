@@ -0,0 +1,208 @@
+package pickup.feature;
+
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+import pickup.tool.ItemFingerprint;
+import pickup.tool.LongObjectMap;
+
+/**
+ * 单个玩家背包（0-35槽）的槽位模型
+ * 记录每个槽位物品的指纹与数量，维护 指纹 -> 未满槽位位图 与空槽位图，
+ * 拾取时直接按位图找到可合并的槽位与空槽，不再两次遍历36个槽位并逐个完整比较。
+ * 模型可能因其他插件或命令修改背包而过期：
+ * - 背包相关事件（点击、拖动、丢弃、交换副手等）把模型标记为过期；
+ * - 超过 MAX_AGE_TICKS 未重建也视为过期；
+ * - 写入前仍会核对槽位的实际物品，不一致时由调用方重建后重试。
+ * 另外记录负缓存：已确认装不下的物品指纹，以及因此被拒绝（进入退避）的物品实体ID；
+ * 背包发生变化（事件通知、重建时发现内容不同）时清空。
+ * 仅供主线程使用。
+ */
+final class InventorySlotModel {
+
+    static final int SLOTS = 36;
+    // 没有事件通知的修改（命令、其他插件）最多影响这么多tick
+    private static final long MAX_AGE_TICKS = 20;
+    // 负缓存容量（超出时最早的记录被覆盖）
+    private static final int MAX_FULL = 16;
+    private static final int MAX_REJECTED = 64;
+
+    private final long[] fingerprints = new long[SLOTS];
+    private final int[] amounts = new int[SLOTS];  // 0 表示空槽
+    private final int[] maxSizes = new int[SLOTS];
+    private long freeSlots;
+    // 指纹 -> 该指纹未满槽位的位图（单元素数组，原地修改）
+    private final LongObjectMap<long[]> partialSlots = new LongObjectMap<>();
+
+    private boolean stale = true;
+    private long builtTick;
+    private long contentHash; // 上次重建时的内容摘要（判断重建前后是否有变化）
+
+    // 负缓存：装不下的指纹
+    private final long[] fullFingerprints = new long[MAX_FULL];
+    private int fullCount;
+    // 被该玩家拒绝的物品实体ID（背包变化时清除它们的退避）
+    private final int[] rejectedItems = new int[MAX_REJECTED];
+    private int rejectedCount;
+
+    boolean isStale(long currentTick) {
+        return stale || currentTick - builtTick > MAX_AGE_TICKS;
+    }
+
+    void invalidate() {
+        stale = true;
+    }
+
+    /**
+     * 读取背包全部槽位重建模型
+     * @return 内容与上次重建时不同（此时负缓存已清空）
+     */
+    boolean rebuild(PlayerInventory inv, long currentTick) {
+        partialSlots.clear();
+        freeSlots = 0;
+        long hash = 0;
+        for (int slot = 0; slot < SLOTS; slot++) {
+            ItemStack stack = inv.getItem(slot);
+            if (stack == null || stack.getType().isAir()) {
+                amounts[slot] = 0;
+                freeSlots |= 1L << slot;
+            } else {
+                fingerprints[slot] = ItemFingerprint.of(stack);
+                amounts[slot] = stack.getAmount();
+                maxSizes[slot] = stack.getMaxStackSize();
+                addPartial(slot);
+                hash += (fingerprints[slot] ^ amounts[slot]) * (0x9E3779B97F4A7C15L * (slot + 1));
+            }
+        }
+        stale = false;
+        builtTick = currentTick;
+        boolean changed = hash != contentHash;
+        contentHash = hash;
+        if (changed) {
+            fullCount = 0;
+        }
+        return changed;
+    }
+
+    // ========== 负缓存 ==========
+
+    /**
+     * 指纹对应的物品是否已确认装不下
+     */
+    boolean isFull(long fingerprint) {
+        for (int i = 0; i < fullCount; i++) {
+            if (fullFingerprints[i] == fingerprint) return true;
+        }
+        return false;
+    }
+
+    void markFull(long fingerprint) {
+        if (isFull(fingerprint)) return;
+        if (fullCount == MAX_FULL) {
+            System.arraycopy(fullFingerprints, 1, fullFingerprints, 0, MAX_FULL - 1);
+            fullCount--;
+        }
+        fullFingerprints[fullCount++] = fingerprint;
+    }
+
+    /**
+     * 记录被拒绝的物品（超出容量时不再记录，这些物品的退避自然到期）
+     */
+    void addRejected(int entityId) {
+        for (int i = 0; i < rejectedCount; i++) {
+            if (rejectedItems[i] == entityId) return;
+        }
+        if (rejectedCount < MAX_REJECTED) {
+            rejectedItems[rejectedCount++] = entityId;
+        }
+    }
+
+    int getRejectedCount() {
+        return rejectedCount;
+    }
+
+    int rejectedAt(int i) {
+        return rejectedItems[i];
+    }
+
+    /**
+     * 背包已变化：清空负缓存（调用方负责清除 rejectedAt 列出的物品的退避）
+     */
+    void clearRejections() {
+        fullCount = 0;
+        rejectedCount = 0;
+    }
+
+    /**
+     * 指纹相同且未满的槽位（位图，第 i 位对应槽位 i）
+     */
+    long partialSlots(long fingerprint) {
+        long[] mask = partialSlots.get(fingerprint);
+        return mask == null ? 0 : mask[0];
+    }
+
+    /**
+     * 空槽位（位图）
+     */
+    long freeSlots() {
+        return freeSlots;
+    }
+
+    int amount(int slot) {
+        return amounts[slot];
+    }
+
+    int maxSize(int slot) {
+        return maxSizes[slot];
+    }
+
+    /**
+     * 槽位的实际物品是否与模型一致（写入前核对）
+     */
+    boolean matches(int slot, ItemStack actual) {
+        if (amounts[slot] == 0) {
+            return actual == null || actual.getType().isAir();
+        }
+        return actual != null && actual.getAmount() == amounts[slot]
+                && ItemFingerprint.hasType(fingerprints[slot], actual.getType())
+                && ItemFingerprint.hasMeta(fingerprints[slot]) == actual.hasItemMeta();
+    }
+
+    /**
+     * 写入槽位后同步模型
+     * @param amount 新数量，0 表示清空
+     */
+    void update(int slot, long fingerprint, int amount, int maxSize) {
+        // 负缓存无需清空：本插件只会放入物品，不会为装不下的指纹腾出空间
+        removePartial(slot);
+        if (amount <= 0) {
+            amounts[slot] = 0;
+            freeSlots |= 1L << slot;
+            return;
+        }
+        freeSlots &= ~(1L << slot);
+        fingerprints[slot] = fingerprint;
+        amounts[slot] = amount;
+        maxSizes[slot] = maxSize;
+        addPartial(slot);
+    }
+
+    private void addPartial(int slot) {
+        if (amounts[slot] >= maxSizes[slot]) return;
+        long[] mask = partialSlots.get(fingerprints[slot]);
+        if (mask == null) {
+            mask = new long[1];
+            partialSlots.put(fingerprints[slot], mask);
+        }
+        mask[0] |= 1L << slot;
+    }
+
+    private void removePartial(int slot) {
+        if (amounts[slot] == 0) return;
+        long[] mask = partialSlots.get(fingerprints[slot]);
+        if (mask == null) return;
+        mask[0] &= ~(1L << slot);
+        if (mask[0] == 0) {
+            partialSlots.remove(fingerprints[slot]);
+        }
+    }
+}
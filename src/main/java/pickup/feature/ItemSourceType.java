@@ -0,0 +1,29 @@
+package pickup.feature;
+
+/**
+ * 物品来源类型枚举
+ */
+enum ItemSourceType {
+    PLAYER_DROP,    // 玩家丢弃（按Q键）
+    NATURAL_DROP,   // 自然掉落（方块挖掘、实体死亡等）
+    INSTANT_PICKUP, // 立即拾取（特殊来源）
+    UNKNOWN;        // 未知来源
+
+    // values() 每次调用都会复制数组，按序号查找时使用缓存
+    static final ItemSourceType[] VALUES = values();
+
+    /**
+     * 解析字符串为物品来源类型
+     * @param str 来源字符串
+     * @return 对应的枚举值，无法解析时返回 UNKNOWN
+     */
+    static ItemSourceType parse(String str) {
+        if (str == null) return UNKNOWN;
+        try {
+            return valueOf(str);
+        } catch (IllegalArgumentException e) {
+            // 字符串无法解析为已知枚举值
+            return UNKNOWN;
+        }
+    }
+}
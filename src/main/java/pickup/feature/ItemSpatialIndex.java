@@ -1,249 +1,230 @@
 package pickup.feature;
 
-import org.bukkit.Location;
 import org.bukkit.World;
-import org.bukkit.entity.Item;
-import org.bukkit.scheduler.BukkitRunnable;
 import pickup.Main;
+import pickup.config.PickupConfig;
+import pickup.tool.LongObjectMap;
 
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * 统一物品空间索引系统
- * 按区块分区缓存物品，供物品驱动和玩家驱动模式共享使用
+ * 区块哈希空间索引（默认后端）
+ * 按区块分区缓存物品，区块坐标打包为 long 键存入开放寻址表，查询与注册全程不创建坐标对象；
+ * 区块（粗粒度层）内部先按16格高的纵向分段（与原版区块段一致）划分，段内再按 cellSize×cellSize 的网格细分，
+ * 每个网格的物品存放在紧凑数组中，删除时用末尾元素填补空位（O(1)）。
+ * 小半径查询只访问与查询球相交的少数网格及垂直方向可达的分段，高塔刷怪场下方的物品不会被高处玩家的查询扫描。
+ * 区块卸载时整块摘除该区块的网格（O(1)）。
+ * 生命周期、移动跟踪与清理见 {@link AbstractSpatialIndex}。
  */
-public class ItemSpatialIndex { // 移除 implements Listener
+public class ItemSpatialIndex extends AbstractSpatialIndex {
 
-    private final Main plugin;
+    // 网格层：世界UUID -> 区块键(long) -> 区块网格
+    private final Map<UUID, LongObjectMap<ChunkCells>> cellIndex = new HashMap<>();
 
-    // 核心数据结构：World -> ChunkCoord -> Set<Item>
-    private final Map<World, Map<ChunkCoord, Set<Item>>> chunkIndex = new ConcurrentHashMap<>();
-
-    // 反向索引：Item -> ChunkCoord（用于快速删除）
-    private final Map<Item, ChunkCoord> itemToChunk = new ConcurrentHashMap<>();
-
-    // 按世界统计物品数量（优化hasPickupableItems检查）
-    private final Map<World, AtomicInteger> worldItemCount = new ConcurrentHashMap<>();
+    // 网格边长（方块，2的幂且不超过16）及其派生值
+    private final int cellSize;
+    private final int cellShift;       // log2(cellSize)
+    private final int cellsPerAxis;    // 每个区块每条边上的网格数
+    private final int chunkCellShift;  // 网格坐标 -> 区块坐标 的位移量
 
     public ItemSpatialIndex(Main plugin) {
-        this.plugin = plugin;
-        // 移除事件注册：plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        super(plugin);
+
+        PickupConfig config = plugin.getPickupConfig();
+        this.cellSize = resolveCellSize(config.getIndexCellSize(),
+                Math.max(config.getPickupRange(), config.getItemMergeRange()));
+        this.cellShift = Integer.numberOfTrailingZeros(cellSize);
+        this.cellsPerAxis = 16 >> cellShift;
+        this.chunkCellShift = 4 - cellShift;
     }
 
-    /**
-     * 注册新物品到索引
-     */
-    public void registerItem(Item item) {
-        if (item == null || !item.isValid() || item.isDead()) return;
-
-        ChunkCoord coord = getChunkCoord(item.getLocation());
-
-        chunkIndex.computeIfAbsent(item.getWorld(), w -> new ConcurrentHashMap<>())
-                .computeIfAbsent(coord, c -> ConcurrentHashMap.newKeySet())
-                .add(item);
-
-        itemToChunk.put(item, coord);
+    @Override
+    public String getBackendName() {
+        return BACKEND_CHUNK_HASH;
+    }
 
-        // 更新世界物品计数
-        worldItemCount.computeIfAbsent(item.getWorld(), w -> new AtomicInteger(0))
-                .incrementAndGet();
+    @Override
+    public int getCellSize() {
+        return cellSize;
+    }
 
-        if (plugin.getConfig().getBoolean("debug", false)) {
-            plugin.getLogger().fine("注册物品到索引: " + item.getItemStack().getType() +
-                    " 在区块 " + coord + ", 世界: " + item.getWorld().getName());
+    @Override
+    protected void backendInsert(Entry entry) {
+        long key = entry.chunk.key;
+        LongObjectMap<ChunkCells> worldCells = cellIndex.computeIfAbsent(entry.world.getUID(), w -> new LongObjectMap<>());
+        ChunkCells cells = worldCells.get(key);
+        if (cells == null) {
+            World world = entry.world;
+            cells = new ChunkCells(key, world.getMinHeight() >> 4,
+                    (world.getMaxHeight() - world.getMinHeight()) >> 4, cellsPerAxis * cellsPerAxis);
+            worldCells.put(key, cells);
         }
+        cells.add(cellKeyOf(cells, entry), entry);
     }
 
-    /**
-     * 从索引中移除物品
-     */
-    public void unregisterItem(Item item) {
-        if (item == null) return;
-
-        ChunkCoord coord = itemToChunk.remove(item);
-        if (coord == null) return;
-
-        World world = item.getWorld();
-        Map<ChunkCoord, Set<Item>> worldChunks = chunkIndex.get(world);
-        if (worldChunks != null) {
-            Set<Item> itemsInChunk = worldChunks.get(coord);
-            if (itemsInChunk != null) {
-                itemsInChunk.remove(item);
-                if (itemsInChunk.isEmpty()) {
-                    worldChunks.remove(coord);
+    @Override
+    protected void backendRemove(Entry entry) {
+        Bucket bucket = entry.bucket;
+        if (bucket == null || bucket.evicted) return; // 区块网格已整块摘除
+        ChunkCells cells = (ChunkCells) entry.node;
+        bucket.remove(entry);
+        if (--cells.size == 0) {
+            LongObjectMap<ChunkCells> worldCells = cellIndex.get(entry.world.getUID());
+            if (worldCells != null) {
+                worldCells.remove(cells.key);
+                if (worldCells.isEmpty()) {
+                    cellIndex.remove(entry.world.getUID());
                 }
             }
+        }
+    }
 
-            if (worldChunks.isEmpty()) {
-                chunkIndex.remove(world);
-            }
+    @Override
+    protected void backendMove(Entry entry) {
+        ChunkCells cells = (ChunkCells) entry.node;
+        long cellKey = cellKeyOf(cells, entry);
+        if (cellKey == entry.cellKey) {
+            entry.bucket.update(entry);
+            return;
         }
+        // 跨越网格或纵向分段：在同一区块内重新分桶
+        entry.bucket.remove(entry);
+        cells.size--;
+        cells.add(cellKey, entry);
+    }
 
-        // 更新世界物品计数
-        AtomicInteger count = worldItemCount.get(world);
-        if (count != null) {
-            int remaining = count.decrementAndGet();
-            if (remaining <= 0) {
-                worldItemCount.remove(world);
-            }
+    @Override
+    protected void backendEvictChunk(World world, long chunkKey) {
+        LongObjectMap<ChunkCells> worldCells = cellIndex.get(world.getUID());
+        if (worldCells == null) return;
+        ChunkCells cells = worldCells.remove(chunkKey);
+        if (cells == null) return;
+        if (worldCells.isEmpty()) {
+            cellIndex.remove(world.getUID());
+        }
+        for (int k = 0; k < cells.cellCount; k++) {
+            cells.cellList[k].evicted = true;
         }
     }
 
-    /**
-     * 获取指定位置附近的物品（供玩家驱动模式使用）
-     * @param center 中心位置
-     * @param range 范围（方块）
-     * @return 范围内的物品集合
-     */
-    public Set<Item> getNearbyItems(Location center, double range) {
-        if (center == null) return Collections.emptySet();
+    @Override
+    protected void backendUnloadWorld(UUID worldId) {
+        cellIndex.remove(worldId);
+    }
 
-        World world = center.getWorld();
-        Map<ChunkCoord, Set<Item>> worldChunks = chunkIndex.get(world);
-        if (worldChunks == null || worldChunks.isEmpty()) {
-            return Collections.emptySet();
+    @Override
+    protected boolean backendQuery(World world, double cx, double cy, double cz, double range, EntryVisitor visitor) {
+        LongObjectMap<ChunkCells> worldCells = cellIndex.get(world.getUID());
+        if (worldCells == null || worldCells.isEmpty()) {
+            return true;
         }
 
-        Set<Item> result = ConcurrentHashMap.newKeySet();
         double rangeSq = range * range;
 
-        // 计算需要检查的区块范围
-        int chunkRange = (int) Math.ceil(range / 16.0);
-        ChunkCoord centerChunk = getChunkCoord(center);
-
-        // 只检查相关区块，而不是整个世界
-        for (int dx = -chunkRange; dx <= chunkRange; dx++) {
-            for (int dz = -chunkRange; dz <= chunkRange; dz++) {
-                ChunkCoord coord = new ChunkCoord(centerChunk.x + dx, centerChunk.z + dz);
-                Set<Item> itemsInChunk = worldChunks.get(coord);
-
-                if (itemsInChunk != null && !itemsInChunk.isEmpty()) {
-                    for (Item item : itemsInChunk) {
-                        if (item.isValid() && !item.isDead() &&
-                                item.getLocation().distanceSquared(center) <= rangeSq) {
-                            result.add(item);
-                        }
+        // 计算与查询范围相交的网格坐标区间
+        int minCellX = (int) Math.floor(cx - range) >> cellShift;
+        int maxCellX = (int) Math.floor(cx + range) >> cellShift;
+        int minCellZ = (int) Math.floor(cz - range) >> cellShift;
+        int maxCellZ = (int) Math.floor(cz + range) >> cellShift;
+        int minY = (int) Math.floor(cy - range);
+        int maxY = (int) Math.floor(cy + range);
+
+        for (int gx = minCellX; gx <= maxCellX; gx++) {
+            // 查询点到该列网格在x方向上的最近距离
+            double dx = axisGap(cx, gx << cellShift, cellSize);
+            for (int gz = minCellZ; gz <= maxCellZ; gz++) {
+                double dz = axisGap(cz, gz << cellShift, cellSize);
+                if (dx * dx + dz * dz > rangeSq) continue; // 网格与查询圆不相交
+
+                ChunkCells cells = worldCells.get(chunkKey(gx >> chunkCellShift, gz >> chunkCellShift));
+                if (cells == null) continue;
+                int cellIndex = localCellIndex(gx, gz);
+
+                // 只访问垂直方向在查询范围内的分段
+                int maxSection = cells.sectionIndex(maxY);
+                for (int section = cells.sectionIndex(minY); section <= maxSection; section++) {
+                    Bucket cell = cells.cell(section, cellIndex);
+                    if (cell != null && !cell.scan(cx, cy, cz, rangeSq, visitor)) {
+                        return false;
                     }
                 }
             }
         }
-
-        return result;
+        return true;
     }
 
-
     /**
-     * 检查世界是否有可拾取物品
+     * 条目所在的网格键（高32位为纵向分段，低32位为分段内网格下标）
      */
-    public boolean hasItemsInWorld(World world) {
-        AtomicInteger count = worldItemCount.get(world);
-        return count != null && count.get() > 0;
+    private long cellKeyOf(ChunkCells cells, Entry entry) {
+        int section = cells.sectionIndex((int) Math.floor(entry.y));
+        int index = localCellIndex((int) Math.floor(entry.x) >> cellShift, (int) Math.floor(entry.z) >> cellShift);
+        return ((long) section << 32) | index;
     }
 
     /**
-     * 获取指定世界中的所有物品（供物品驱动模式使用）
+     * 网格坐标在所属区块内的下标
      */
-    public Set<Item> getAllItemsInWorld(World world) {
-        Map<ChunkCoord, Set<Item>> worldChunks = chunkIndex.get(world);
-        if (worldChunks == null || worldChunks.isEmpty()) {
-            return Collections.emptySet();
-        }
-
-        Set<Item> allItems = ConcurrentHashMap.newKeySet();
-        for (Set<Item> chunkItems : worldChunks.values()) {
-            allItems.addAll(chunkItems);
-        }
-        return allItems;
-    }
-
-    // 清理队列表格
-    public void startCleanupTask() {
-        new BukkitRunnable() {
-            @Override
-            public void run() {
-                cleanupInvalidItems();
-            }
-        }.runTaskTimer(plugin, 20 * 60 * 5, 20 * 60 * 5); // 每5分钟清理一次
+    private int localCellIndex(int cellX, int cellZ) {
+        int mask = cellsPerAxis - 1;
+        return (cellX & mask) * cellsPerAxis + (cellZ & mask);
     }
 
     /**
-     * 清理无效物品（定期调用，防止内存泄漏）
+     * 区块网格：按16格高的纵向分段持有网格桶，分段与网格均按需创建
+     * 超出世界高度范围的物品（被抛到建筑上限以上或掉入虚空）归入最高/最低分段
      */
-    public void cleanupInvalidItems() {
-        int cleaned = 0;
-
-        for (World world : chunkIndex.keySet()) {
-            Map<ChunkCoord, Set<Item>> worldChunks = chunkIndex.get(world);
-            if (worldChunks == null) continue;
-
-            for (ChunkCoord coord : new ArrayList<>(worldChunks.keySet())) {
-                Set<Item> items = worldChunks.get(coord);
-                if (items == null) continue;
-
-                Iterator<Item> iter = items.iterator();
-                while (iter.hasNext()) {
-                    Item item = iter.next();
-                    if (!item.isValid() || item.isDead()) {
-                        iter.remove();
-                        itemToChunk.remove(item);
-                        cleaned++;
-                    }
-                }
-
-                if (items.isEmpty()) {
-                    worldChunks.remove(coord);
-                }
-            }
-
-            if (worldChunks.isEmpty()) {
-                chunkIndex.remove(world);
-            }
+    private static final class ChunkCells {
+        final long key;
+        final int minSection;          // 世界最低分段的y坐标（方块y >> 4）
+        final int cellsPerSection;     // 每个分段内的网格数
+        final Bucket[][] sections;     // 分段 -> 网格下标 -> 网格桶
+        Bucket[] cellList = new Bucket[4]; // 已创建的网格桶（整块摘除时使用）
+        int cellCount;
+        int size; // 区块内物品总数
+
+        ChunkCells(long key, int minSection, int sectionCount, int cellsPerSection) {
+            this.key = key;
+            this.minSection = minSection;
+            this.cellsPerSection = cellsPerSection;
+            this.sections = new Bucket[Math.max(1, sectionCount)][];
         }
 
-        if (cleaned > 0 && plugin.getConfig().getBoolean("debug", false)) {
-            plugin.getLogger().info("清理了 " + cleaned + " 个无效物品引用");
+        /**
+         * 方块y坐标所在的分段下标（超出世界高度时取边界分段）
+         */
+        int sectionIndex(int blockY) {
+            int section = (blockY >> 4) - minSection;
+            if (section < 0) return 0;
+            return Math.min(section, sections.length - 1);
         }
-    }
 
-    // ================== 辅助类 ==================
-
-    /**
-     * 区块坐标（用于索引）
-     */
-    private static class ChunkCoord {
-        final int x, z;
-
-        ChunkCoord(int x, int z) {
-            this.x = x;
-            this.z = z;
-        }
-
-        ChunkCoord(Location loc) {
-            this.x = loc.getBlockX() >> 4;
-            this.z = loc.getBlockZ() >> 4;
-        }
-
-        @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (!(o instanceof ChunkCoord that)) return false;
-            return x == that.x && z == that.z;
-        }
-
-        @Override
-        public int hashCode() {
-            return 31 * x + z;
+        Bucket cell(int section, int cellIndex) {
+            Bucket[] cells = sections[section];
+            return cells == null ? null : cells[cellIndex];
         }
 
-        @Override
-        public String toString() {
-            return "(" + x + "," + z + ")";
+        void add(long cellKey, Entry entry) {
+            int section = (int) (cellKey >>> 32);
+            int cellIndex = (int) cellKey;
+            Bucket[] cells = sections[section];
+            if (cells == null) {
+                cells = new Bucket[cellsPerSection];
+                sections[section] = cells;
+            }
+            Bucket cell = cells[cellIndex];
+            if (cell == null) {
+                cell = new Bucket();
+                cells[cellIndex] = cell;
+                if (cellCount == cellList.length) {
+                    cellList = Arrays.copyOf(cellList, cellCount << 1);
+                }
+                cellList[cellCount++] = cell;
+            }
+            cell.add(entry);
+            entry.cellKey = cellKey;
+            entry.node = this;
+            size++;
         }
     }
-
-    private ChunkCoord getChunkCoord(Location loc) {
-        return new ChunkCoord(loc);
-    }
-}
\ No newline at end of file
+}
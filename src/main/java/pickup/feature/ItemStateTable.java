@@ -0,0 +1,523 @@
+package pickup.feature;
+
+import org.bukkit.NamespacedKey;
+import org.bukkit.entity.Item;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.persistence.PersistentDataContainer;
+import org.bukkit.persistence.PersistentDataType;
+import pickup.tool.ItemFingerprint;
+
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * 物品状态表：按实体ID保存掉落物的生成时间、来源、丢弃者与可拾取时间
+ * 拾取判断每次都要读取这些状态，直接读 PDC 需要经过 NBT 查找、字符串解析（来源枚举、UUID）与装箱；
+ * 状态表把它们保存为平行的基本类型数组（int 键开放寻址、线性探测、后移删除），热路径只做一次哈希查找。
+ * PDC 只作为持久化格式：
+ * - 读：表中没有的物品（区块加载、插件重载前已存在）在第一次访问时从 PDC 读取一次；
+ * - 写：状态变化后标记为脏，只在需要持久化时（区块卸载、世界保存/卸载、跨世界、插件禁用）写回。
+ * 持久化格式为单个 LONG_ARRAY（见 {@link #STATE_KEY}）；旧版本的三个独立键在第一次读取时迁移，
+ * 下一次写回时改写为新格式并删除旧键。
+ * 可拾取时间 = 生成时间 + 来源对应的延迟，延迟配置改变时整表重算。
+ * 另外缓存物品堆叠的指纹（不持久化），供合并与背包堆叠判断先比较 long 再做完整比较；
+ * 以及拾取被拒绝（拾取者背包已满等）后的指数退避：退避期内不再尝试拾取该物品。
+ * 非线程安全，仅供主线程使用。
+ */
+final class ItemStateTable {
+
+    /**
+     * 紧凑持久化格式：[生成时间, 格式版本 << 8 | 来源序号, 丢弃者UUID高位, 丢弃者UUID低位]
+     * 没有丢弃者时只有前两个元素
+     */
+    static final NamespacedKey STATE_KEY = new NamespacedKey("pickup", "state");
+    private static final long FORMAT_VERSION = 1;
+
+    // 旧版本的持久化数据容器键（只读，用于迁移与清理）
+    static final NamespacedKey SPAWN_TICK_KEY = new NamespacedKey("pickup", "spawn_tick");
+    static final NamespacedKey DROPPED_BY_KEY = new NamespacedKey("pickup", "dropped_by");
+    static final NamespacedKey SOURCE_KEY = new NamespacedKey("pickup", "source");
+
+    /** 未记录生成时间（旧物品或其他插件生成的物品） */
+    static final long NO_TICK = Long.MIN_VALUE;
+
+    // 拾取被拒绝后的退避时间（tick）：每次拒绝翻倍，直到上限
+    private static final long BACKOFF_BASE_TICKS = 2;
+    private static final long BACKOFF_MAX_TICKS = 40;
+    // 带元数据的指纹最多缓存的时间（tick）：其他插件修改名称、附魔等不会触发事件，过期后重新计算
+    private static final long FINGERPRINT_MAX_AGE_TICKS = 20;
+
+    // 最小容量（必须为2的幂）
+    private static final int MIN_CAPACITY = 64;
+    // 空槽标记（实体ID不为负）
+    private static final int FREE = -1;
+
+    // 状态标志位
+    private static final byte DIRTY = 1;        // 与 PDC 不一致，需要写回
+    private static final byte HAS_DROPPER = 2;  // 记录了丢弃者
+    private static final byte HAS_FINGERPRINT = 4; // 已缓存堆叠指纹
+
+    private int[] keys;
+    private long[] spawnTicks;
+    private long[] readyTicks;
+    private long[] dropperMost, dropperLeast;
+    private long[] fingerprints;
+    private long[] fingerprintTicks; // 计算指纹时的tick
+    private long[] retryTicks;   // 退避结束的tick
+    private byte[] rejects;      // 连续被拒绝的次数
+    private byte[] sources;
+    private byte[] flags;
+    private int mask;
+    private int size;
+    private int resizeAt;
+
+    // 各来源的拾取延迟（tick），按 ItemSourceType 序号存放
+    private final long[] delays = new long[ItemSourceType.VALUES.length];
+
+    // 统计：从 PDC 读取的次数，其中旧格式的次数
+    private long loads = 0;
+    private long legacyLoads = 0;
+
+    ItemStateTable() {
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        Arrays.fill(keys, FREE);
+        spawnTicks = new long[capacity];
+        readyTicks = new long[capacity];
+        dropperMost = new long[capacity];
+        dropperLeast = new long[capacity];
+        fingerprints = new long[capacity];
+        fingerprintTicks = new long[capacity];
+        retryTicks = new long[capacity];
+        rejects = new byte[capacity];
+        sources = new byte[capacity];
+        flags = new byte[capacity];
+        mask = capacity - 1;
+        resizeAt = capacity * 3 / 4;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // ========== 查找 ==========
+
+    /**
+     * 实体ID所在的槽位
+     * @return 槽位，不存在时返回-1（槽位在下一次插入或删除前有效）
+     */
+    int find(int entityId) {
+        int i = mix(entityId) & mask;
+        int k;
+        while ((k = keys[i]) != FREE) {
+            if (k == entityId) return i;
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * 物品所在的槽位，表中没有时从 PDC 读取一次
+     */
+    int slotOf(Item item) {
+        int slot = find(item.getEntityId());
+        return slot >= 0 ? slot : load(item);
+    }
+
+    long spawnTick(int slot) {
+        return spawnTicks[slot];
+    }
+
+    /**
+     * 可拾取的 tick（生成时间 + 来源对应的延迟），未记录生成时间时返回 NO_TICK
+     */
+    long readyTick(int slot) {
+        return readyTicks[slot];
+    }
+
+    ItemSourceType source(int slot) {
+        return ItemSourceType.VALUES[sources[slot]];
+    }
+
+    long delay(int slot) {
+        return delays[sources[slot]];
+    }
+
+    /**
+     * 物品是否由指定玩家丢弃（直接比较UUID的高低位，不创建对象）
+     */
+    boolean isDroppedBy(int slot, UUID playerId) {
+        return (flags[slot] & HAS_DROPPER) != 0
+                && dropperMost[slot] == playerId.getMostSignificantBits()
+                && dropperLeast[slot] == playerId.getLeastSignificantBits();
+    }
+
+    /**
+     * 物品堆叠的指纹（按实体缓存）
+     * 其他插件可能通过 setItemStack 或修改元数据改变物品而不触发事件，缓存按当前物品核对：
+     * 类型或是否带元数据不一致时重新计算；带元数据的指纹另有 FINGERPRINT_MAX_AGE_TICKS 的有效期。
+     * 本插件修改元数据后应调用 {@link #invalidateFingerprint}
+     * @param stack 物品实体当前的堆叠（调用方已经取得）
+     */
+    long fingerprint(Item item, ItemStack stack) {
+        int slot = slotOf(item);
+        if ((flags[slot] & HAS_FINGERPRINT) != 0 && isFingerprintCurrent(slot, item, stack)) {
+            return fingerprints[slot];
+        }
+        long fingerprint = ItemFingerprint.of(stack);
+        fingerprints[slot] = fingerprint;
+        if (ItemFingerprint.hasMeta(fingerprint)) {
+            fingerprintTicks[slot] = item.getWorld().getGameTime();
+        }
+        flags[slot] |= HAS_FINGERPRINT;
+        return fingerprint;
+    }
+
+    private boolean isFingerprintCurrent(int slot, Item item, ItemStack stack) {
+        long fingerprint = fingerprints[slot];
+        if (!ItemFingerprint.hasType(fingerprint, stack.getType())) return false;
+        boolean hasMeta = stack.hasItemMeta();
+        if (ItemFingerprint.hasMeta(fingerprint) != hasMeta) return false;
+        // 没有元数据的指纹只由类型决定，类型一致即准确
+        return !hasMeta || item.getWorld().getGameTime() - fingerprintTicks[slot] <= FINGERPRINT_MAX_AGE_TICKS;
+    }
+
+    void invalidateFingerprint(Item item) {
+        int slot = find(item.getEntityId());
+        if (slot >= 0) {
+            flags[slot] &= ~HAS_FINGERPRINT;
+        }
+    }
+
+    /**
+     * 物品是否仍在拾取退避期内
+     */
+    boolean isBackedOff(int slot, long currentTick) {
+        return currentTick < retryTicks[slot];
+    }
+
+    /**
+     * 记录一次被拒绝的拾取尝试，退避时间按连续拒绝次数翻倍
+     */
+    void backoff(Item item, long currentTick) {
+        int slot = slotOf(item);
+        int count = rejects[slot];
+        long delay = Math.min(BACKOFF_BASE_TICKS << count, BACKOFF_MAX_TICKS);
+        if (delay < BACKOFF_MAX_TICKS) {
+            rejects[slot] = (byte) (count + 1);
+        }
+        retryTicks[slot] = currentTick + delay;
+    }
+
+    /**
+     * 清除退避（拒绝它的拾取者背包发生了变化）
+     */
+    void clearBackoff(int entityId) {
+        int slot = find(entityId);
+        if (slot >= 0) {
+            retryTicks[slot] = 0;
+            rejects[slot] = 0;
+        }
+    }
+
+    // ========== 写入 ==========
+
+    /**
+     * 记录物品状态（覆盖已有记录）
+     * @param dropper 丢弃者，没有时为null
+     */
+    void record(Item item, long spawnTick, ItemSourceType source, UUID dropper) {
+        int slot = insert(item.getEntityId());
+        set(slot, spawnTick, source, dropper);
+        flags[slot] |= DIRTY;
+    }
+
+    /**
+     * 物品生成：保留已有的标记（PDC 中读取到的或此前记录的），缺失的来源记为自然掉落、缺失的时间记为当前tick
+     */
+    void recordSpawn(Item item, long currentTick) {
+        int slot = slotOf(item);
+        boolean changed = false;
+        if (sources[slot] == ItemSourceType.UNKNOWN.ordinal()) {
+            sources[slot] = (byte) ItemSourceType.NATURAL_DROP.ordinal();
+            changed = true;
+        }
+        if (spawnTicks[slot] == NO_TICK) {
+            spawnTicks[slot] = currentTick;
+            changed = true;
+        }
+        if (changed) {
+            updateReadyTick(slot);
+            flags[slot] |= DIRTY;
+        }
+    }
+
+    /**
+     * 合并：被移除的物品更新（生成时间更晚）时把它的状态转移到保留的物品上，然后删除被移除物品的记录
+     */
+    void transfer(Item keep, Item remove) {
+        int from = slotOf(remove);
+        long removeSpawnTick = spawnTicks[from];
+        ItemSourceType removeSource = source(from);
+        boolean hasDropper = (flags[from] & HAS_DROPPER) != 0;
+        long most = dropperMost[from], least = dropperLeast[from];
+
+        int to = slotOf(keep); // 可能插入新记录，之前的槽位失效
+        if (removeSpawnTick > spawnTicks[to]) {
+            set(to, removeSpawnTick, removeSource, null);
+            if (hasDropper) {
+                dropperMost[to] = most;
+                dropperLeast[to] = least;
+                flags[to] |= HAS_DROPPER;
+            }
+            flags[to] |= DIRTY;
+        }
+        remove(remove.getEntityId());
+    }
+
+    private void set(int slot, long spawnTick, ItemSourceType source, UUID dropper) {
+        spawnTicks[slot] = spawnTick;
+        sources[slot] = (byte) source.ordinal();
+        if (dropper != null) {
+            dropperMost[slot] = dropper.getMostSignificantBits();
+            dropperLeast[slot] = dropper.getLeastSignificantBits();
+            flags[slot] |= HAS_DROPPER;
+        } else {
+            flags[slot] &= ~HAS_DROPPER;
+        }
+        updateReadyTick(slot);
+    }
+
+    private void updateReadyTick(int slot) {
+        long spawnTick = spawnTicks[slot];
+        readyTicks[slot] = spawnTick == NO_TICK ? NO_TICK : spawnTick + delays[sources[slot]];
+    }
+
+    /**
+     * 设置来源对应的拾取延迟，并重算所有物品的可拾取时间
+     */
+    void setDelays(long playerDrop, long naturalDrop, long instantPickup, long unknown) {
+        delays[ItemSourceType.PLAYER_DROP.ordinal()] = playerDrop;
+        delays[ItemSourceType.NATURAL_DROP.ordinal()] = naturalDrop;
+        delays[ItemSourceType.INSTANT_PICKUP.ordinal()] = instantPickup;
+        delays[ItemSourceType.UNKNOWN.ordinal()] = unknown;
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != FREE) updateReadyTick(i);
+        }
+    }
+
+    // ========== PDC 读写 ==========
+
+    /**
+     * 从 PDC 读取物品状态并插入表中（只在第一次访问时发生）
+     */
+    private int load(Item item) {
+        loads++;
+        PersistentDataContainer pdc = item.getPersistentDataContainer();
+        long[] packed = pdc.get(STATE_KEY, PersistentDataType.LONG_ARRAY);
+        if (packed != null && packed.length >= 2 && (packed[1] >>> 8) == FORMAT_VERSION) {
+            int slot = insert(item.getEntityId());
+            int ordinal = (int) (packed[1] & 0xFF);
+            spawnTicks[slot] = packed[0];
+            sources[slot] = (byte) (ordinal < ItemSourceType.VALUES.length ? ordinal : ItemSourceType.UNKNOWN.ordinal());
+            if (packed.length >= 4) {
+                dropperMost[slot] = packed[2];
+                dropperLeast[slot] = packed[3];
+                flags[slot] |= HAS_DROPPER;
+            }
+            updateReadyTick(slot);
+            return slot;
+        }
+        return loadLegacy(item, pdc);
+    }
+
+    /**
+     * 读取旧版本的三个独立键，并标记为脏以便写回时迁移为紧凑格式
+     */
+    private int loadLegacy(Item item, PersistentDataContainer pdc) {
+        Long spawnTick = pdc.get(SPAWN_TICK_KEY, PersistentDataType.LONG);
+        ItemSourceType source = ItemSourceType.parse(pdc.get(SOURCE_KEY, PersistentDataType.STRING));
+        UUID dropper = null;
+        String droppedBy = pdc.get(DROPPED_BY_KEY, PersistentDataType.STRING);
+        if (droppedBy != null) {
+            try {
+                dropper = UUID.fromString(droppedBy);
+            } catch (IllegalArgumentException ignored) {
+                // UUID格式无效，忽略
+            }
+        }
+
+        int slot = insert(item.getEntityId());
+        set(slot, spawnTick != null ? spawnTick : NO_TICK, source, dropper);
+        if (spawnTick != null) {
+            legacyLoads++;
+            flags[slot] |= DIRTY;
+        }
+        return slot;
+    }
+
+    /**
+     * 把脏状态写回物品的 PDC
+     */
+    void flush(Item item) {
+        int slot = find(item.getEntityId());
+        if (slot >= 0) {
+            write(slot, item);
+        }
+    }
+
+    /**
+     * 写回 PDC 并删除记录（物品即将随区块卸载或离开当前世界）
+     */
+    void flushAndRemove(Item item) {
+        int slot = find(item.getEntityId());
+        if (slot < 0) return;
+        write(slot, item);
+        shiftDelete(slot);
+        size--;
+    }
+
+    private void write(int slot, Item item) {
+        if ((flags[slot] & DIRTY) == 0) return;
+        flags[slot] &= ~DIRTY;
+        if (spawnTicks[slot] == NO_TICK) return;
+
+        long header = FORMAT_VERSION << 8 | sources[slot];
+        long[] packed = (flags[slot] & HAS_DROPPER) != 0
+                ? new long[]{spawnTicks[slot], header, dropperMost[slot], dropperLeast[slot]}
+                : new long[]{spawnTicks[slot], header};
+        PersistentDataContainer pdc = item.getPersistentDataContainer();
+        pdc.set(STATE_KEY, PersistentDataType.LONG_ARRAY, packed);
+        // 迁移：删除旧格式的键
+        pdc.remove(SPAWN_TICK_KEY);
+        pdc.remove(SOURCE_KEY);
+        pdc.remove(DROPPED_BY_KEY);
+    }
+
+    // ========== 哈希表维护 ==========
+
+    /**
+     * 找到或创建实体ID的槽位（新槽位的状态为空）
+     */
+    private int insert(int entityId) {
+        int i = mix(entityId) & mask;
+        int k;
+        while ((k = keys[i]) != FREE) {
+            if (k == entityId) return i;
+            i = (i + 1) & mask;
+        }
+        if (size + 1 > resizeAt) {
+            rehash(keys.length << 1);
+            return insert(entityId);
+        }
+        keys[i] = entityId;
+        spawnTicks[i] = NO_TICK;
+        readyTicks[i] = NO_TICK;
+        sources[i] = (byte) ItemSourceType.UNKNOWN.ordinal();
+        retryTicks[i] = 0;
+        rejects[i] = 0;
+        flags[i] = 0;
+        size++;
+        return i;
+    }
+
+    /**
+     * 删除记录（不写回 PDC）
+     */
+    void remove(int entityId) {
+        int slot = find(entityId);
+        if (slot >= 0) {
+            shiftDelete(slot);
+            size--;
+        }
+    }
+
+    /**
+     * 后移删除：把探测链上后续元素前移填补空位，保证查找不被中断
+     */
+    private void shiftDelete(int gap) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            int k = keys[i];
+            if (k == FREE) break;
+            int home = mix(k) & mask;
+            // 元素的理想位置不在 (gap, i] 区间内时才能前移到 gap
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                move(i, gap);
+                gap = i;
+            }
+        }
+        keys[gap] = FREE;
+    }
+
+    private void move(int from, int to) {
+        keys[to] = keys[from];
+        spawnTicks[to] = spawnTicks[from];
+        readyTicks[to] = readyTicks[from];
+        dropperMost[to] = dropperMost[from];
+        dropperLeast[to] = dropperLeast[from];
+        fingerprints[to] = fingerprints[from];
+        fingerprintTicks[to] = fingerprintTicks[from];
+        retryTicks[to] = retryTicks[from];
+        rejects[to] = rejects[from];
+        sources[to] = sources[from];
+        flags[to] = flags[from];
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        long[] oldSpawn = spawnTicks, oldReady = readyTicks, oldMost = dropperMost, oldLeast = dropperLeast;
+        long[] oldFingerprints = fingerprints, oldFingerprintTicks = fingerprintTicks, oldRetry = retryTicks;
+        byte[] oldRejects = rejects;
+        byte[] oldSources = sources, oldFlags = flags;
+        allocate(newCapacity);
+        for (int j = 0; j < oldKeys.length; j++) {
+            int k = oldKeys[j];
+            if (k == FREE) continue;
+            int i = mix(k) & mask;
+            while (keys[i] != FREE) {
+                i = (i + 1) & mask;
+            }
+            keys[i] = k;
+            spawnTicks[i] = oldSpawn[j];
+            readyTicks[i] = oldReady[j];
+            dropperMost[i] = oldMost[j];
+            dropperLeast[i] = oldLeast[j];
+            fingerprints[i] = oldFingerprints[j];
+            fingerprintTicks[i] = oldFingerprintTicks[j];
+            retryTicks[i] = oldRetry[j];
+            rejects[i] = oldRejects[j];
+            sources[i] = oldSources[j];
+            flags[i] = oldFlags[j];
+        }
+    }
+
+    /**
+     * 清空（不写回 PDC，调用方应先对仍存在的物品调用 flush）
+     */
+    void clear() {
+        if (keys.length > MIN_CAPACITY) {
+            allocate(MIN_CAPACITY);
+        } else {
+            Arrays.fill(keys, FREE);
+        }
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getLoads() {
+        return loads;
+    }
+
+    long getLegacyLoads() {
+        return legacyLoads;
+    }
+}
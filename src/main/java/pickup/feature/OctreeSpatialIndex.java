@@ -0,0 +1,311 @@
+package pickup.feature;
+
+import org.bukkit.World;
+import pickup.Main;
+import pickup.config.PickupConfig;
+import pickup.tool.LongObjectMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 八叉树空间索引（动态树）
+ * 世界按 256 格的立方体划分为若干棵八叉树（根节点按需创建，存入开放寻址表）；
+ * 叶节点物品数超过 LEAF_CAPACITY 时一分为八，子树物品数降到 MERGE_THRESHOLD 以下时合并回父节点，
+ * 最小节点边长沿用 index.cell-size。
+ * 密集物品堆（刷怪塔收集点、农场出口）会被逐级细分，稀疏区域保持一个大叶节点，
+ * 查询只下降到与查询球相交的节点。
+ */
+public class OctreeSpatialIndex extends AbstractSpatialIndex {
+
+    // 根节点边长（方块）
+    private static final int ROOT_SHIFT = 8;
+    private static final int ROOT_SIZE = 1 << ROOT_SHIFT;
+    // 根节点 y 坐标范围（±4096格），超出时取边界根节点
+    private static final int MIN_ROOT_Y = -16;
+    private static final int MAX_ROOT_Y = 15;
+    // 叶节点容量与合并阈值
+    private static final int LEAF_CAPACITY = 16;
+    private static final int MERGE_THRESHOLD = LEAF_CAPACITY / 2;
+
+    // 世界UUID -> 根键(long) -> 根节点
+    private final Map<UUID, LongObjectMap<Node>> roots = new HashMap<>();
+
+    // 最小节点边长（达到后叶节点不再细分，允许超出容量）
+    private final int minNodeSize;
+
+    public OctreeSpatialIndex(Main plugin) {
+        super(plugin);
+
+        PickupConfig config = plugin.getPickupConfig();
+        this.minNodeSize = resolveCellSize(config.getIndexCellSize(),
+                Math.max(config.getPickupRange(), config.getItemMergeRange()));
+    }
+
+    @Override
+    public String getBackendName() {
+        return BACKEND_OCTREE;
+    }
+
+    @Override
+    public int getCellSize() {
+        return minNodeSize;
+    }
+
+    @Override
+    protected void backendInsert(Entry entry) {
+        int rx = (int) Math.floor(entry.x) >> ROOT_SHIFT;
+        int ry = clampRootY((int) Math.floor(entry.y) >> ROOT_SHIFT);
+        int rz = (int) Math.floor(entry.z) >> ROOT_SHIFT;
+        long key = rootKey(rx, ry, rz);
+
+        LongObjectMap<Node> worldRoots = roots.computeIfAbsent(entry.world.getUID(), w -> new LongObjectMap<>());
+        Node root = worldRoots.get(key);
+        if (root == null) {
+            root = new Node(null, 0, rx << ROOT_SHIFT, ry << ROOT_SHIFT, rz << ROOT_SHIFT, ROOT_SIZE);
+            worldRoots.put(key, root);
+        }
+        entry.cellKey = key;
+        insertInto(root, entry);
+    }
+
+    /**
+     * 从指定节点下降到叶节点并放入条目，沿途累加子树计数；叶节点超出容量时细分
+     */
+    private void insertInto(Node node, Entry entry) {
+        while (true) {
+            node.count++;
+            if (node.children == null) break;
+            int octant = node.octant(entry.x, entry.y, entry.z);
+            Node child = node.children[octant];
+            if (child == null) {
+                child = node.createChild(octant);
+            }
+            node = child;
+        }
+
+        if (node.bucket == null) {
+            node.bucket = new Bucket();
+        }
+        node.bucket.add(entry);
+        entry.node = node;
+
+        if (node.bucket.size > LEAF_CAPACITY && node.size > minNodeSize) {
+            split(node);
+        }
+    }
+
+    /**
+     * 叶节点一分为八，把物品分发到子节点（子节点仍超出容量时继续细分）
+     */
+    private void split(Node node) {
+        Bucket bucket = node.bucket;
+        node.bucket = null;
+        node.children = new Node[8];
+        for (int i = 0, n = bucket.size; i < n; i++) {
+            Entry entry = bucket.entries[i];
+            int octant = node.octant(entry.x, entry.y, entry.z);
+            Node child = node.children[octant];
+            if (child == null) {
+                child = node.createChild(octant);
+                child.bucket = new Bucket();
+            }
+            child.bucket.add(entry);
+            child.count++;
+            entry.node = child;
+        }
+        for (Node child : node.children) {
+            if (child != null && child.bucket.size > LEAF_CAPACITY && child.size > minNodeSize) {
+                split(child);
+            }
+        }
+    }
+
+    @Override
+    protected void backendRemove(Entry entry) {
+        Node leaf = (Node) entry.node;
+        if (leaf == null || entry.bucket == null) return;
+        leaf.bucket.remove(entry);
+        entry.node = null;
+
+        Node root = leaf;
+        for (Node n = leaf; n != null; n = n.parent) {
+            n.count--;
+            root = n;
+        }
+
+        if (root.count == 0) {
+            // 整棵树已空
+            LongObjectMap<Node> worldRoots = roots.get(entry.world.getUID());
+            if (worldRoots != null) {
+                worldRoots.remove(entry.cellKey);
+                if (worldRoots.isEmpty()) {
+                    roots.remove(entry.world.getUID());
+                }
+            }
+            return;
+        }
+
+        // 找到物品数降到合并阈值以下的最高祖先，把整个子树合并为一个叶节点
+        Node collapseAt = null;
+        for (Node n = leaf.parent; n != null && n.count <= MERGE_THRESHOLD; n = n.parent) {
+            collapseAt = n;
+        }
+        if (collapseAt != null) {
+            collapse(collapseAt);
+        } else if (leaf.count == 0 && leaf.parent != null) {
+            leaf.parent.children[leaf.octant] = null; // 剪掉空叶节点
+        }
+    }
+
+    /**
+     * 把子树中的所有物品收回到该节点，使其成为叶节点
+     */
+    private void collapse(Node node) {
+        Bucket bucket = new Bucket();
+        gather(node, bucket, node);
+        node.children = null;
+        node.bucket = bucket;
+    }
+
+    private static void gather(Node node, Bucket into, Node owner) {
+        if (node.children == null) {
+            Bucket bucket = node.bucket;
+            if (bucket == null) return;
+            for (int i = 0, n = bucket.size; i < n; i++) {
+                Entry entry = bucket.entries[i];
+                into.add(entry);
+                entry.node = owner;
+            }
+            return;
+        }
+        for (Node child : node.children) {
+            if (child != null) gather(child, into, owner);
+        }
+    }
+
+    @Override
+    protected void backendMove(Entry entry) {
+        Node leaf = (Node) entry.node;
+        if (leaf != null && leaf.contains(entry.x, entry.y, entry.z)) {
+            entry.bucket.update(entry);
+            return;
+        }
+        backendRemove(entry);
+        backendInsert(entry);
+    }
+
+    @Override
+    protected void backendUnloadWorld(UUID worldId) {
+        roots.remove(worldId);
+    }
+
+    @Override
+    protected boolean backendQuery(World world, double cx, double cy, double cz, double range, EntryVisitor visitor) {
+        LongObjectMap<Node> worldRoots = roots.get(world.getUID());
+        if (worldRoots == null || worldRoots.isEmpty()) {
+            return true;
+        }
+
+        double rangeSq = range * range;
+        int minRx = (int) Math.floor(cx - range) >> ROOT_SHIFT;
+        int maxRx = (int) Math.floor(cx + range) >> ROOT_SHIFT;
+        int minRy = clampRootY((int) Math.floor(cy - range) >> ROOT_SHIFT);
+        int maxRy = clampRootY((int) Math.floor(cy + range) >> ROOT_SHIFT);
+        int minRz = (int) Math.floor(cz - range) >> ROOT_SHIFT;
+        int maxRz = (int) Math.floor(cz + range) >> ROOT_SHIFT;
+
+        for (int rx = minRx; rx <= maxRx; rx++) {
+            for (int rz = minRz; rz <= maxRz; rz++) {
+                for (int ry = minRy; ry <= maxRy; ry++) {
+                    Node root = worldRoots.get(rootKey(rx, ry, rz));
+                    if (root != null && !query(root, cx, cy, cz, rangeSq, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 递归查询与查询球相交的节点
+     */
+    private static boolean query(Node node, double cx, double cy, double cz, double rangeSq, EntryVisitor visitor) {
+        double dx = axisGap(cx, node.minX, node.size);
+        double dy = axisGap(cy, node.minY, node.size);
+        double dz = axisGap(cz, node.minZ, node.size);
+        // 根节点可能收纳了 y 超出范围的物品，不做剪枝
+        if (node.parent != null && dx * dx + dy * dy + dz * dz > rangeSq) return true;
+
+        if (node.children == null) {
+            return node.bucket == null || node.bucket.scan(cx, cy, cz, rangeSq, visitor);
+        }
+        for (Node child : node.children) {
+            if (child != null && !query(child, cx, cy, cz, rangeSq, visitor)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int clampRootY(int rootY) {
+        return Math.max(MIN_ROOT_Y, Math.min(MAX_ROOT_Y, rootY));
+    }
+
+    /**
+     * 打包根节点坐标：x、z 各26位，y 12位
+     */
+    private static long rootKey(int rootX, int rootY, int rootZ) {
+        return ((long) (rootX & 0x3FFFFFF) << 38)
+                | ((long) (rootZ & 0x3FFFFFF) << 12)
+                | (rootY & 0xFFF);
+    }
+
+    /**
+     * 八叉树节点：叶节点持有物品桶，内部节点持有8个（按需创建的）子节点
+     */
+    private static final class Node {
+        final Node parent;
+        final int octant;              // 在父节点 children 中的下标
+        final int minX, minY, minZ;
+        final int size;                // 边长（2的幂）
+        Node[] children;               // null 表示叶节点
+        Bucket bucket;                 // 叶节点的物品（按需创建）
+        int count;                     // 子树内物品总数
+
+        Node(Node parent, int octant, int minX, int minY, int minZ, int size) {
+            this.parent = parent;
+            this.octant = octant;
+            this.minX = minX;
+            this.minY = minY;
+            this.minZ = minZ;
+            this.size = size;
+        }
+
+        int octant(double x, double y, double z) {
+            int half = size >> 1;
+            return (x >= minX + half ? 1 : 0)
+                    | (y >= minY + half ? 2 : 0)
+                    | (z >= minZ + half ? 4 : 0);
+        }
+
+        Node createChild(int octant) {
+            int half = size >> 1;
+            Node child = new Node(this, octant,
+                    minX + ((octant & 1) != 0 ? half : 0),
+                    minY + ((octant & 2) != 0 ? half : 0),
+                    minZ + ((octant & 4) != 0 ? half : 0),
+                    half);
+            children[octant] = child;
+            return child;
+        }
+
+        boolean contains(double x, double y, double z) {
+            return x >= minX && x < minX + size
+                    && y >= minY && y < minY + size
+                    && z >= minZ && z < minZ + size;
+        }
+    }
+}
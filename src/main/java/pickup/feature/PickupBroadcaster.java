@@ -0,0 +1,173 @@
+package pickup.feature;
+
+import org.bukkit.Location;
+import org.bukkit.Sound;
+import org.bukkit.entity.Item;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import pickup.tool.PacketUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Level;
+
+/**
+ * 拾取反馈（拾取动画数据包与拾取音效）的发送队列
+ * - 动画发送给拾取者以及所有正在追踪该物品实体的玩家，旁观的玩家不再看到物品凭空消失；
+ * - 一个tick内发给同一观看者的动画合并为一个 bundle 数据包；
+ * - 拾取音效按观看者节流：每tick每人最多一次，且两次之间至少间隔 SOUND_INTERVAL_TICKS；
+ * - 被拾取完的物品实体在动画发出后才移除（客户端需要实体仍存在才能播放动画）。
+ * 与拾取事务无关（不论是否开启批量拾取），由拾取管理器的每tick任务调用一次 flush。
+ * 仅供主线程使用。
+ */
+final class PickupBroadcaster {
+
+    // 同一观看者两次拾取音效的最小间隔（单位：ticks）
+    private static final long SOUND_INTERVAL_TICKS = 2;
+    // 拾取音效（音量0.2）的可听距离（平方）
+    private static final double SOUND_RANGE_SQ = 16.0 * 16.0;
+
+    private final Plugin plugin;
+    private final Map<UUID, Viewer> viewers = new HashMap<>();
+    private final List<Viewer> pending = new ArrayList<>();   // 本次 flush 前有待发送内容的观看者
+    private final List<Item> removals = new ArrayList<>();    // 动画发出后移除的物品实体
+    private boolean packetsFailed; // 数据包发送出错后不再尝试（只记录一次日志），音效照常
+
+    private final Location itemLocation = new Location(null, 0, 0, 0);
+    private final Location viewerLocation = new Location(null, 0, 0, 0);
+
+    /**
+     * 单个观看者的待发送内容（按玩家复用）
+     */
+    private static final class Viewer {
+        Player player;
+        final List<Object> packets = new ArrayList<>();
+        final Location soundLocation = new Location(null, 0, 0, 0);
+        boolean hasSound;
+        boolean queued;
+        long lastSoundTick = -SOUND_INTERVAL_TICKS;
+    }
+
+    PickupBroadcaster(Plugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 记录一次玩家拾取：动画发给拾取者与物品的追踪者，音效发给可听距离内的观看者
+     */
+    void pickup(Player collector, Item item, int amount) {
+        Object packet = createPacket(item, collector, amount);
+        Location loc = item.getLocation(itemLocation);
+        queue(collector, packet, loc);
+        for (Player viewer : item.getTrackedPlayers()) {
+            if (viewer != collector) {
+                queue(viewer, packet, loc);
+            }
+        }
+    }
+
+    /**
+     * 物品已被全部拾取：在下次 flush 发出动画后移除
+     */
+    void removeAfterFlush(Item item) {
+        removals.add(item);
+    }
+
+    private Object createPacket(Item item, Player collector, int amount) {
+        if (packetsFailed) return null;
+        try {
+            return PacketUtils.createTakeItemPacket(item.getEntityId(), collector.getEntityId(), amount);
+        } catch (Exception e) {
+            packetFailed(e);
+            return null;
+        }
+    }
+
+    private void queue(Player player, Object packet, Location loc) {
+        Viewer viewer = viewers.computeIfAbsent(player.getUniqueId(), id -> new Viewer());
+        viewer.player = player;
+        if (!viewer.queued) {
+            viewer.queued = true;
+            pending.add(viewer);
+        }
+        if (packet != null) {
+            viewer.packets.add(packet);
+        }
+        Location at = player.getLocation(viewerLocation);
+        if (at.getWorld() == loc.getWorld() && at.distanceSquared(loc) <= SOUND_RANGE_SQ) {
+            viewer.soundLocation.setWorld(loc.getWorld());
+            viewer.soundLocation.setX(loc.getX());
+            viewer.soundLocation.setY(loc.getY());
+            viewer.soundLocation.setZ(loc.getZ());
+            viewer.hasSound = true;
+        }
+    }
+
+    /**
+     * 发出全部待发送的动画与音效，然后移除被拾取完的物品实体
+     * @param currentTick 当前服务器tick（音效节流）
+     */
+    void flush(long currentTick) {
+        try {
+            for (int i = 0, n = pending.size(); i < n; i++) {
+                Viewer viewer = pending.get(i);
+                try {
+                    send(viewer, currentTick);
+                } finally {
+                    reset(viewer);
+                }
+            }
+        } finally {
+            pending.clear();
+            for (int i = 0, n = removals.size(); i < n; i++) {
+                removals.get(i).remove();
+            }
+            removals.clear();
+        }
+    }
+
+    private void send(Viewer viewer, long currentTick) {
+        Player player = viewer.player;
+        if (!player.isOnline()) return;
+        if (!viewer.packets.isEmpty() && !packetsFailed) {
+            try {
+                PacketUtils.sendPackets(player, viewer.packets);
+            } catch (Exception e) {
+                packetFailed(e);
+            }
+        }
+        if (viewer.hasSound && currentTick - viewer.lastSoundTick >= SOUND_INTERVAL_TICKS) {
+            player.playSound(viewer.soundLocation, Sound.ENTITY_ITEM_PICKUP, 0.2f, (float) (0.8 + Math.random() * 0.4));
+            viewer.lastSoundTick = currentTick;
+        }
+    }
+
+    private void reset(Viewer viewer) {
+        // 不跨 flush 持有玩家、数据包与世界的引用
+        viewer.player = null;
+        viewer.packets.clear();
+        viewer.soundLocation.setWorld(null);
+        viewer.hasSound = false;
+        viewer.queued = false;
+    }
+
+    private void packetFailed(Exception e) {
+        packetsFailed = true;
+        plugin.getLogger().log(Level.WARNING, "发送拾取动画失败，已停止发送拾取动画数据包", e);
+    }
+
+    /**
+     * 玩家下线时丢弃其记录
+     */
+    void forget(UUID playerId) {
+        viewers.remove(playerId);
+    }
+
+    void clear() {
+        flush(0);
+        viewers.clear();
+    }
+}
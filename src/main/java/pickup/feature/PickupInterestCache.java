@@ -0,0 +1,280 @@
+package pickup.feature;
+
+import org.bukkit.World;
+import pickup.tool.LongObjectMap;
+
+import java.util.*;
+
+/**
+ * 每名玩家的拾取兴趣集合缓存
+ * 记录以玩家某次所在位置为球心、半径为 拾取范围 + MARGIN 的球内所有物品的实体ID；
+ * 之后由索引的登记/移除/移动通知增量维护，玩家离开球心超过 MARGIN（或换世界、拾取范围改变）时才重新查询索引。
+ * 只要玩家仍在球心 MARGIN 以内，拾取范围内的物品必然都在集合中，
+ * 站着不动或缓慢移动的玩家每次拾取检查只需逐个比较集合内物品的快照距离。
+ * 通知按区块路由：每个兴趣球登记在它覆盖的区块上，物品变更只检查所在区块上的兴趣球。
+ * 所有读写都在主线程进行。
+ */
+public class PickupInterestCache implements SpatialIndex.ChangeListener {
+
+    // 兴趣球在拾取范围之外额外包含的距离（方块）
+    static final double MARGIN = 4.0;
+
+    private final SpatialIndex index;
+
+    // 玩家UUID -> 兴趣集合
+    private final Map<UUID, Interest> interests = new HashMap<>();
+    // 区块路由：世界UUID -> 区块键(long) -> 覆盖该区块的兴趣集合
+    private final Map<UUID, LongObjectMap<List<Interest>>> chunkRoutes = new HashMap<>();
+
+    // snapshot 复用的缓冲区
+    private int[] snapshotIds = new int[16];
+
+    // 统计
+    private long hits = 0;      // 直接使用缓存
+    private long rebuilds = 0;  // 重新查询索引
+
+    // 重建时正在填充的兴趣集合（复用同一个回调）
+    private Interest filling;
+    private final SpatialIndex.IdVisitor fillVisitor = entityId -> {
+        filling.add(entityId);
+        return true;
+    };
+
+    public PickupInterestCache(SpatialIndex index) {
+        this.index = index;
+    }
+
+    /**
+     * 把玩家当前的兴趣集合复制到内部缓冲区（必要时先重建），之后用 {@link #idAt(int)} 读取
+     * 复制是因为拾取会移除物品、触发通知修改集合本身
+     * @return 集合中的物品数量
+     */
+    public int snapshot(UUID playerId, World world, double x, double y, double z, double pickupRange) {
+        Interest interest = interests.get(playerId);
+        if (interest == null) {
+            interest = new Interest();
+            interests.put(playerId, interest);
+            rebuild(interest, world, x, y, z, pickupRange);
+        } else if (!interest.covers(world, x, y, z, pickupRange)) {
+            rebuild(interest, world, x, y, z, pickupRange);
+        } else {
+            hits++;
+        }
+
+        int n = interest.size;
+        if (snapshotIds.length < n) {
+            snapshotIds = new int[Integer.highestOneBit(n) << 1];
+        }
+        System.arraycopy(interest.ids, 0, snapshotIds, 0, n);
+        return n;
+    }
+
+    /** 上一次 snapshot 复制出的第 i 个实体ID */
+    public int idAt(int i) {
+        return snapshotIds[i];
+    }
+
+    /**
+     * 以新位置为球心重新查询索引，并更新区块路由
+     */
+    private void rebuild(Interest interest, World world, double x, double y, double z, double pickupRange) {
+        rebuilds++;
+        unroute(interest);
+
+        interest.worldId = world.getUID();
+        interest.cx = x;
+        interest.cy = y;
+        interest.cz = z;
+        interest.pickupRange = pickupRange;
+        interest.radius = pickupRange + MARGIN;
+        interest.radiusSq = interest.radius * interest.radius;
+        interest.size = 0;
+
+        filling = interest;
+        try {
+            index.forEachNearbyId(world, x, y, z, interest.radius, fillVisitor);
+        } finally {
+            filling = null;
+        }
+
+        route(interest);
+    }
+
+    /**
+     * 把兴趣球登记到它覆盖的每个区块
+     */
+    private void route(Interest interest) {
+        LongObjectMap<List<Interest>> routes = chunkRoutes.computeIfAbsent(interest.worldId, w -> new LongObjectMap<>());
+        interest.minChunkX = (int) Math.floor(interest.cx - interest.radius) >> 4;
+        interest.maxChunkX = (int) Math.floor(interest.cx + interest.radius) >> 4;
+        interest.minChunkZ = (int) Math.floor(interest.cz - interest.radius) >> 4;
+        interest.maxChunkZ = (int) Math.floor(interest.cz + interest.radius) >> 4;
+        for (int chunkX = interest.minChunkX; chunkX <= interest.maxChunkX; chunkX++) {
+            for (int chunkZ = interest.minChunkZ; chunkZ <= interest.maxChunkZ; chunkZ++) {
+                long key = AbstractSpatialIndex.chunkKey(chunkX, chunkZ);
+                List<Interest> list = routes.get(key);
+                if (list == null) {
+                    list = new ArrayList<>(2);
+                    routes.put(key, list);
+                }
+                list.add(interest);
+            }
+        }
+    }
+
+    /**
+     * 取消兴趣球的区块登记
+     */
+    private void unroute(Interest interest) {
+        if (interest.worldId == null) return;
+        LongObjectMap<List<Interest>> routes = chunkRoutes.get(interest.worldId);
+        if (routes == null) return;
+        for (int chunkX = interest.minChunkX; chunkX <= interest.maxChunkX; chunkX++) {
+            for (int chunkZ = interest.minChunkZ; chunkZ <= interest.maxChunkZ; chunkZ++) {
+                long key = AbstractSpatialIndex.chunkKey(chunkX, chunkZ);
+                List<Interest> list = routes.get(key);
+                if (list == null) continue;
+                list.remove(interest);
+                if (list.isEmpty()) {
+                    routes.remove(key);
+                }
+            }
+        }
+        if (routes.isEmpty()) {
+            chunkRoutes.remove(interest.worldId);
+        }
+    }
+
+    /**
+     * 覆盖指定坐标所在区块的兴趣集合
+     */
+    private List<Interest> routesAt(World world, double x, double z) {
+        LongObjectMap<List<Interest>> routes = chunkRoutes.get(world.getUID());
+        if (routes == null) return null;
+        return routes.get(AbstractSpatialIndex.chunkKey((int) Math.floor(x) >> 4, (int) Math.floor(z) >> 4));
+    }
+
+    /**
+     * 玩家下线时移除其兴趣集合
+     */
+    public void forget(UUID playerId) {
+        Interest interest = interests.remove(playerId);
+        if (interest != null) {
+            unroute(interest);
+        }
+    }
+
+    /**
+     * 世界卸载：丢弃该世界中的兴趣集合及其区块路由
+     */
+    public void unloadWorld(World world) {
+        UUID worldId = world.getUID();
+        chunkRoutes.remove(worldId);
+        interests.values().removeIf(interest -> worldId.equals(interest.worldId));
+    }
+
+    /**
+     * 清空所有兴趣集合（拾取范围改变、禁用或重载时调用）
+     */
+    public void clear() {
+        interests.clear();
+        chunkRoutes.clear();
+    }
+
+    public int size() {
+        return interests.size();
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getRebuilds() {
+        return rebuilds;
+    }
+
+    // ========== 索引变更通知 ==========
+
+    @Override
+    public void itemAdded(World world, int entityId, double x, double y, double z) {
+        List<Interest> list = routesAt(world, x, z);
+        if (list == null) return;
+        for (int i = 0, n = list.size(); i < n; i++) {
+            Interest interest = list.get(i);
+            if (interest.contains(x, y, z)) {
+                interest.add(entityId);
+            }
+        }
+    }
+
+    @Override
+    public void itemRemoved(World world, int entityId, double x, double y, double z) {
+        List<Interest> list = routesAt(world, x, z);
+        if (list == null) return;
+        for (int i = 0, n = list.size(); i < n; i++) {
+            list.get(i).remove(entityId);
+        }
+    }
+
+    @Override
+    public void itemMoved(World world, int entityId, double x, double y, double z) {
+        // 区块内移动：进入球内的加入，离开球的移除
+        List<Interest> list = routesAt(world, x, z);
+        if (list == null) return;
+        for (int i = 0, n = list.size(); i < n; i++) {
+            Interest interest = list.get(i);
+            if (interest.contains(x, y, z)) {
+                interest.add(entityId);
+            } else {
+                interest.remove(entityId);
+            }
+        }
+    }
+
+    /**
+     * 兴趣集合：球心、半径与球内物品ID（紧凑数组，删除时用末尾元素填补）
+     * 球内物品通常只有几个到几十个，线性查找比哈希更快
+     */
+    private static final class Interest {
+        UUID worldId;
+        double cx, cy, cz;
+        double pickupRange;
+        double radius, radiusSq;
+        int minChunkX, maxChunkX, minChunkZ, maxChunkZ; // 已登记的区块范围
+        int[] ids = new int[8];
+        int size;
+
+        /**
+         * 玩家站在 (x, y, z) 时，拾取范围是否仍完全落在兴趣球内
+         */
+        boolean covers(World world, double x, double y, double z, double pickupRange) {
+            if (!world.getUID().equals(worldId) || pickupRange != this.pickupRange) return false;
+            double dx = x - cx, dy = y - cy, dz = z - cz;
+            return dx * dx + dy * dy + dz * dz <= MARGIN * MARGIN;
+        }
+
+        boolean contains(double x, double y, double z) {
+            double dx = x - cx, dy = y - cy, dz = z - cz;
+            return dx * dx + dy * dy + dz * dz <= radiusSq;
+        }
+
+        void add(int entityId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == entityId) return;
+            }
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = entityId;
+        }
+
+        void remove(int entityId) {
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == entityId) {
+                    ids[i] = ids[--size];
+                    return;
+                }
+            }
+        }
+    }
+}
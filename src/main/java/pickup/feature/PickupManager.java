@@ -4,7 +4,6 @@ package pickup.feature;
 import org.bukkit.*;
 import org.bukkit.entity.*;
 import org.bukkit.event.block.BlockDropItemEvent;
-import org.bukkit.event.entity.EntityDeathEvent;
 import org.bukkit.event.entity.ItemSpawnEvent;
 import org.bukkit.event.player.PlayerDropItemEvent;
 import org.bukkit.inventory.*;
@@ -18,10 +17,9 @@ import org.bukkit.scheduler.BukkitRunnable;
 import pickup.*;
 import pickup.config.PickupConfig;
 import pickup.tool.ArmorType;
-import pickup.tool.PacketUtils;
+import pickup.tool.ItemFingerprint;
+import pickup.tool.NmsAccess;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -31,7 +29,7 @@ import java.util.concurrent.ConcurrentHashMap;
  */
 public class PickupManager implements PickupConfig.ConfigChangeListener {
     // 添加统一索引
-    private final ItemSpatialIndex itemIndex;
+    private final SpatialIndex itemIndex;
 
     // 插件主类引用
     private final Main plugin;
@@ -49,29 +47,57 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
     private boolean active = false;
 
     // 持久化数据容器键（用于在物品NBT中存储元数据）
-    private static final NamespacedKey SPAWN_TICK_KEY = new NamespacedKey("pickup", "spawn_tick");
-    private static final NamespacedKey DROPPED_BY_KEY = new NamespacedKey("pickup", "dropped_by");
-    private static final NamespacedKey SOURCE_KEY = new NamespacedKey("pickup", "source");
+    private static final NamespacedKey SPAWN_TICK_KEY = ItemStateTable.SPAWN_TICK_KEY;
+    private static final NamespacedKey DROPPED_BY_KEY = ItemStateTable.DROPPED_BY_KEY;
+    private static final NamespacedKey SOURCE_KEY = ItemStateTable.SOURCE_KEY;
+
+    // 掉落物状态表（热路径不再读取 PDC，只在持久化时写回）
+    private final ItemStateTable itemStates = new ItemStateTable();
+    // 每名玩家的背包槽位模型（拾取时按位图找槽位）
+    private final Map<UUID, InventorySlotModel> slotModels = new HashMap<>();
+    // 拾取事务（每个玩家一个，复用）与当前打开的事务
+    private final Map<UUID, PickupTransaction> transactions = new HashMap<>();
+    private final List<PickupTransaction> openTransactions = new ArrayList<>();
+    private boolean batching; // 批量拾取中：事务在本次处理调用结束时统一提交
+    private final PickupBroadcaster broadcaster; // 拾取动画与音效（每tick发出一次）
+    private BukkitRunnable effectsTask = null;   // 每tick发出拾取动画与音效的任务
 
     // 玩家驱动模式相关
     private final Set<UUID> activePlayers = ConcurrentHashMap.newKeySet(); // 活跃玩家集合（线程安全）
     private BukkitRunnable activePlayerUpdater = null; // 玩家更新定时任务
 
 
+    // 粗筛模式相关（mode.broad-phase）：每tick每个世界一次排序扫描，代替每名玩家单独查询
+    private BukkitRunnable broadPhaseTask = null;
+    private final BroadPhaseSweep broadPhase = new BroadPhaseSweep();
+    private final List<Player> broadPhasePending = new ArrayList<>(); // 本tick尚未分组的玩家
+    private final List<Player> broadPhaseGroup = new ArrayList<>();   // 当前世界的拾取者（下标与 addPicker 一致）
+    private final BroadPhaseSweep.PairVisitor broadPhasePairHandler = this::pickupBroadPhasePair;
+
     // 物品驱动模式相关
     private BukkitRunnable itemDetectionTask = null; // 物品检测定时任务
+    private final List<World> itemDrivenWorlds = new ArrayList<>(); // 轮询的世界（随世界加载/卸载更新）
+
+    // 复用的位置对象（主线程使用），避免每次检测都分配 Location
+    private final Location pickerLocation = new Location(null, 0, 0, 0);
+    private final Location itemLocation = new Location(null, 0, 0, 0);
+    // 玩家驱动模式的每人兴趣集合（由索引变更通知增量维护）
+    private final PickupInterestCache interestCache;
 
     /**
      * 构造函数（带 config 参数）
      * @param plugin 插件主类实例
      * @param config 配置管理器
      */
-    public PickupManager(Main plugin, PickupConfig config, ItemSpatialIndex spatialIndex) {
+    public PickupManager(Main plugin, PickupConfig config, SpatialIndex spatialIndex) {
         this.plugin = plugin;
         this.config = config;
+        this.broadcaster = new PickupBroadcaster(plugin);
 
         // 初始化物品索引
         this.itemIndex = spatialIndex;
+        this.interestCache = new PickupInterestCache(spatialIndex);
+        spatialIndex.setChangeListener(interestCache);
 
         // 注册为配置变更监听器
         this.config.addChangeListener(this);
@@ -107,6 +133,7 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         this.instantPickupDelayTicks = config.getInstantPickupDelayTicks();
         this.selfImmuneTicks = config.getSelfImmuneTicks();
         this.activeDetectionTicks = config.getActiveDetectionTicks();
+        applyDelays();
 
         plugin.getLogger().info("- pickupRangeSq: " + pickupRangeSq);
     }
@@ -126,16 +153,25 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
                 break;
             case "pickup.delays.player-drop":
                 this.playerDropDelayTicks = (int) value;
+                applyDelays();
                 break;
             case "pickup.delays.natural-drop":
                 this.naturalDropDelayTicks = (int) value;
+                applyDelays();
                 break;
             case "pickup.delays.instant-pickup":
                 this.instantPickupDelayTicks = (int) value;
+                applyDelays();
                 break;
             case "pickup.self-immune-ticks":
                 this.selfImmuneTicks = (int) value;
                 break;
+            case "pickup.offhand-pickup":
+                // 副手是否可放置影响“装不下”的判断
+                for (InventorySlotModel model : slotModels.values()) {
+                    clearRejections(model);
+                }
+                break;
             case "mode.item-active-duration":
                 this.activeDetectionTicks = (int) value;
                 break;
@@ -154,22 +190,14 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      */
     public void handleItemSpawn(ItemSpawnEvent event) {
         Item item = event.getEntity();
-        PersistentDataContainer pdc = item.getPersistentDataContainer();
+        World world = item.getWorld();
+        long currentTick = world.getGameTime();
 
-        // ✅ 关键修复：直接从 Item Entity 的 PDC 读取已有的来源标记
-        String existingSource = pdc.get(SOURCE_KEY, PersistentDataType.STRING);
-
-        // 如果没有来源标记（例如自然掉落、方块破坏等），默认设为 NATURAL_DROP
-        if (existingSource == null) {
-            pdc.set(SOURCE_KEY, PersistentDataType.STRING, ItemSourceType.NATURAL_DROP.name());
-        }
-
-        // 使用原版 tick 计数
-        if (!pdc.has(SPAWN_TICK_KEY, PersistentDataType.LONG)) {
-            pdc.set(SPAWN_TICK_KEY, PersistentDataType.LONG, item.getWorld().getGameTime());
-        }
+        // 保留物品实体上已有的来源标记；没有来源标记（实体死亡、方块破坏等自然掉落）时记为 NATURAL_DROP，
+        // 没有生成时间时使用原版 tick 计数
+        itemStates.recordSpawn(item, currentTick);
 
-        // 禁用原版拾取逻辑（通过反射设置pickupDelay）
+        // 禁用原版拾取逻辑（设置pickupDelay）
         disableVanillaPickup(item);
 
         // 通知物品合并器有新物品可合并
@@ -219,50 +247,206 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
     }
 
     /**
-     * 处理实体死亡事件（怪物/动物死亡掉落）
-     * @param event 实体死亡事件
+     * 玩家驱动的拾取扫描（由玩家移动事件触发）
+     * @param player 尝试拾取物品的玩家
      */
-    public void handleEntityDeath(EntityDeathEvent event) {
-        for (ItemStack stack : event.getDrops()) {
-            if (stack == null || stack.getType().isAir()) continue;
-            // 直接标记为 NATURAL_DROP（与方块掉落一致）
-            markItemStackAsNaturalDrop(stack);
+    public void tryPickup(Player player) {
+        // 旁观者模式不拾取物品
+        if (player.getGameMode() == GameMode.SPECTATOR) return;
+
+        // 使用缓存的兴趣集合，玩家离开缓存球心太远时才重新查询索引
+        Location loc = player.getLocation(pickerLocation);
+        World world = loc.getWorld();
+        double px = loc.getX(), py = loc.getY(), pz = loc.getZ();
+        int n = interestCache.snapshot(player.getUniqueId(), world, px, py, pz, Math.sqrt(pickupRangeSq));
+
+        // 按快照坐标过滤距离，只有拾取范围内的物品才解析实体
+        boolean batch = beginBatch();
+        try {
+            for (int i = 0; i < n; i++) {
+                int entityId = interestCache.idAt(i);
+                if (itemIndex.distanceSquared(entityId, world, px, py, pz) > pickupRangeSq) continue;
+                Item item = itemIndex.getItem(entityId);
+                if (item != null && canPickupNow(player, item, false, true)) {
+                    performPickup(player, item);
+                }
+            }
+        } finally {
+            if (batch) commitBatch();
         }
     }
 
     /**
-     * 标记物品堆栈为自然掉落（在物品实体生成之前）
-     * @param stack 物品堆栈
+     * 世界加载：加入物品驱动模式的轮询列表
      */
-    private void markItemStackAsNaturalDrop(ItemStack stack) {
-        if (stack == null || stack.getType() == Material.AIR) return;
+    public void onWorldLoad(World world) {
+        if (itemDetectionTask != null && !itemDrivenWorlds.contains(world)) {
+            itemDrivenWorlds.add(world);
+        }
+    }
 
-        // 编辑物品元数据，添加来源标记
-        stack.editMeta(meta -> meta.getPersistentDataContainer().set(
-                SOURCE_KEY,
-                PersistentDataType.STRING,
-                ItemSourceType.NATURAL_DROP.name()
-        ));
+    /**
+     * 世界卸载：释放该世界的轮询状态与兴趣集合
+     */
+    public void onWorldUnload(World world) {
+        itemDrivenWorlds.remove(world);
+        interestCache.unloadWorld(world);
     }
 
     /**
-     * 玩家驱动的拾取扫描（由玩家移动事件触发）
-     * @param player 尝试拾取物品的玩家
+     * 玩家下线时丢弃其兴趣集合
      */
-    public void tryPickup(Player player) {
-        // 旁观者模式不拾取物品
-        if (player.getGameMode() == GameMode.SPECTATOR) return;
+    public void forgetPlayer(UUID playerId) {
+        interestCache.forget(playerId);
+        slotModels.remove(playerId);
+        transactions.remove(playerId);
+        broadcaster.forget(playerId);
+    }
+
+    /**
+     * 玩家背包可能已被修改（点击、拖动、丢弃、交换副手等），下次拾取前重建槽位模型
+     */
+    public void invalidateInventory(Player player) {
+        InventorySlotModel model = slotModels.get(player.getUniqueId());
+        if (model != null) {
+            model.invalidate();
+            clearRejections(model);
+        }
+    }
+
+    /**
+     * 玩家的槽位模型，过期时重建
+     */
+    private InventorySlotModel slotModel(Player player, PickupTransaction tx, long tick) {
+        InventorySlotModel model = slotModels.computeIfAbsent(player.getUniqueId(), id -> new InventorySlotModel());
+        if (model.isStale(tick)) {
+            rebuildSlotModel(model, tx, tick);
+        }
+        return model;
+    }
+
+    private void rebuildSlotModel(InventorySlotModel model, PickupTransaction tx, long tick) {
+        // 重建读取的是背包本身，先写回事务中暂存的改动
+        tx.flush();
+        if (model.rebuild(tx.getInventory(), tick)) {
+            clearRejections(model);
+        }
+    }
+
+    /**
+     * 玩家的拾取事务，未打开时打开
+     */
+    private PickupTransaction transaction(Player player) {
+        PickupTransaction tx = transactions.computeIfAbsent(player.getUniqueId(), id -> new PickupTransaction());
+        if (!tx.isOpen()) {
+            tx.begin(player);
+            openTransactions.add(tx);
+        }
+        return tx;
+    }
+
+    /**
+     * 开始批量拾取（配置开启且尚未处于批量中时）
+     * @return 是否由本次调用开始，是则调用方负责 commitBatch
+     */
+    private boolean beginBatch() {
+        if (batching || !config.isBatchPickup()) return false;
+        batching = true;
+        return true;
+    }
 
-        // 使用索引获取附近物品，而不是world.getNearbyEntities()
-        Set<Item> nearbyItems = itemIndex.getNearbyItems(
-                player.getLocation(), Math.sqrt(pickupRangeSq));
+    private void commitBatch() {
+        batching = false;
+        commitPickups();
+    }
 
-        // 对每个物品尝试拾取
-        for (Item item : nearbyItems) {
-            if (canPickupNow(player, item)) {
-                performPickup(player, item);
+    /**
+     * 提交所有打开的事务（拾取动画与音效留到本tick的 effectsTask 统一发出）
+     */
+    private void commitPickups() {
+        try {
+            for (int i = 0, n = openTransactions.size(); i < n; i++) {
+                openTransactions.get(i).commit();
+            }
+        } finally {
+            // 提交中途出错时，其余事务直接关闭，不留在打开状态
+            for (int i = 0, n = openTransactions.size(); i < n; i++) {
+                openTransactions.get(i).close();
             }
+            openTransactions.clear();
+        }
+    }
+
+    /**
+     * 背包已变化：清空负缓存，并解除被该玩家拒绝的物品的退避
+     */
+    private void clearRejections(InventorySlotModel model) {
+        for (int i = 0, n = model.getRejectedCount(); i < n; i++) {
+            itemStates.clearBackoff(model.rejectedAt(i));
         }
+        model.clearRejections();
+    }
+
+    /**
+     * 玩家是否已确认装不下该物品（物品驱动模式选择拾取者时跳过）
+     */
+    private boolean isKnownFull(Player player, long fingerprint) {
+        InventorySlotModel model = slotModels.get(player.getUniqueId());
+        return model != null && model.isFull(fingerprint);
+    }
+
+    /**
+     * 拾取被拒绝：物品进入退避，并记录在拒绝者的模型上（背包变化时解除）
+     */
+    private void rejectPickup(InventorySlotModel model, Item item, long tick) {
+        itemStates.backoff(item, tick);
+        model.addRejected(item.getEntityId());
+    }
+
+    public PickupInterestCache getInterestCache() {
+        return interestCache;
+    }
+
+    /**
+     * 物品离开世界（被拾取、合并、消失、销毁或随区块卸载）时删除其状态记录
+     */
+    public void forgetItem(Item item) {
+        itemStates.remove(item.getEntityId());
+    }
+
+    /**
+     * 物品即将随区块卸载或转移到其他世界：把状态写回 PDC 并删除记录
+     */
+    public void persistItem(Item item) {
+        itemStates.flushAndRemove(item);
+    }
+
+    /**
+     * 世界保存：把该世界中物品的脏状态写回 PDC
+     */
+    public void persistWorld(World world) {
+        for (Item item : world.getEntitiesByClass(Item.class)) {
+            itemStates.flush(item);
+        }
+    }
+
+    /**
+     * 物品状态表（供物品合并器转移状态）
+     */
+    ItemStateTable getItemStates() {
+        return itemStates;
+    }
+
+    public int getItemStateCount() {
+        return itemStates.size();
+    }
+
+    public long getItemStateLoads() {
+        return itemStates.getLoads();
+    }
+
+    public long getItemStateLegacyLoads() {
+        return itemStates.getLegacyLoads();
     }
 
     // ====== 内部逻辑 ======
@@ -273,10 +457,7 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      * @param playerId 丢弃玩家的UUID
      */
     private void markItemAsPlayerDrop(Item item, UUID playerId) {
-        PersistentDataContainer pdc = item.getPersistentDataContainer();
-        pdc.set(SPAWN_TICK_KEY, PersistentDataType.LONG, item.getWorld().getGameTime());
-        pdc.set(DROPPED_BY_KEY, PersistentDataType.STRING, playerId.toString());
-        pdc.set(SOURCE_KEY, PersistentDataType.STRING, ItemSourceType.PLAYER_DROP.name());
+        itemStates.record(item, item.getWorld().getGameTime(), ItemSourceType.PLAYER_DROP, playerId);
     }
 
     /**
@@ -284,27 +465,17 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      * @param item 物品实体
      */
     private void markItemAsNaturalDrop(Item item) {
-        PersistentDataContainer pdc = item.getPersistentDataContainer();
-        pdc.set(SPAWN_TICK_KEY, PersistentDataType.LONG, item.getWorld().getGameTime());
-        pdc.set(SOURCE_KEY, PersistentDataType.STRING, ItemSourceType.NATURAL_DROP.name());
+        itemStates.record(item, item.getWorld().getGameTime(), ItemSourceType.NATURAL_DROP, null);
     }
 
 
     /**
-     * 禁用原版物品拾取逻辑（通过反射设置pickupDelay为最大值）
+     * 禁用原版物品拾取逻辑（设置pickupDelay为最大值）
      * @param item 物品实体
      */
     private void disableVanillaPickup(Item item) {
-        try {
-            // 使用反射获取NMS ItemEntity对象
-            Object nmsItem = getGetHandleMethod().invoke(item);
-            // 获取pickupDelay字段并设置为最大值（禁止原版拾取）
-            Field delayField = getItemPickupDelayField();
-            delayField.set(nmsItem, 6000);
-        } catch (Exception e) {
-            plugin.getLogger().warning("Failed to disable vanilla pickup for item: " +
-                    item.getItemStack().getType());
-        }
+        // 设置为最大值（禁止原版拾取）；访问方式在启用时已探测，不可用时已记录日志
+        NmsAccess.setPickupDelay(item, 6000);
     }
 
     /**
@@ -328,6 +499,15 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         return itemIndex.hasItemsInWorld(world);
     }
 
+    /**
+     * 检查指定位置的拾取范围内是否可能存在物品（区块占用位图，O(1)）
+     * @param location 玩家位置
+     * @return 可能存在时返回true，需要继续精确检测
+     */
+    public boolean hasPickupableItemsNear(Location location) {
+        return itemIndex.mayHaveItemsNear(location);
+    }
+
     /**
      * 检查 LivingEntity（玩家或生物）是否可以拾取指定物品
      * @param entity 尝试拾取的实体
@@ -335,48 +515,49 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      * @return 是否可以拾取
      */
     private boolean canPickupNow(LivingEntity entity, Item item, boolean skipEntitySpecificChecks) {
+        return canPickupNow(entity, item, skipEntitySpecificChecks, false);
+    }
+
+    /**
+     * @param skipDistanceCheck 调用方已完成距离检查时为true
+     */
+    private boolean canPickupNow(LivingEntity entity, Item item, boolean skipEntitySpecificChecks, boolean skipDistanceCheck) {
         long currentTime = item.getWorld().getGameTime();// 当前游戏时间（tick）
-        PersistentDataContainer pdc = item.getPersistentDataContainer();
 
-        // 获取物品的生成时间和来源类型
-        Long spawnTick = pdc.get(SPAWN_TICK_KEY, PersistentDataType.LONG);
-        String sourceStr = pdc.get(SOURCE_KEY, PersistentDataType.STRING);
-        ItemSourceType source = parseSource(sourceStr); // 解析来源类型
+        // 从状态表读取物品的生成时间、来源类型与可拾取时间
+        int slot = itemStates.slotOf(item);
+        long spawnTick = itemStates.spawnTick(slot);
 
-        // 如果未记录生成时间，使用当前时间作为默认值
-        if (spawnTick == null) {
-            spawnTick = currentTime;
+        // 最近被拒绝过（拾取者背包已满等），退避期内不再尝试
+        if (itemStates.isBackedOff(slot, currentTime)) {
+            return false;
         }
 
-        // 根据物品来源类型获取要求的延迟时间
-        long requiredDelay = getRequiredDelay(source);
-
         // 检查是否满足延迟要求（冷却时间）
-        if (currentTime - spawnTick < requiredDelay) {
+        if (spawnTick == ItemStateTable.NO_TICK) {
+            // 未记录生成时间时视为刚生成
+            if (itemStates.delay(slot) > 0) {
+                return false;
+            }
+            spawnTick = currentTime;
+        } else if (currentTime < itemStates.readyTick(slot)) {
             return false;
         }
 
         // 如果不跳过实体特定检查，检查玩家自我免疫
-        if (!skipEntitySpecificChecks && entity instanceof Player player && source == ItemSourceType.PLAYER_DROP) {
-            String droppedByStr = pdc.get(DROPPED_BY_KEY, PersistentDataType.STRING);
-            if (droppedByStr != null) {
-                try {
-                    UUID droppedBy = UUID.fromString(droppedByStr);
-                    if (droppedBy.equals(player.getUniqueId())) {
-                        // 如果拾取者就是丢弃者，检查是否还在自身免疫期内
-                        if (currentTime - spawnTick < selfImmuneTicks) {
-                            return false;
-                        }
-                    }
-                } catch (IllegalArgumentException ignored) {
-                    // UUID格式无效，忽略
-                }
+        if (!skipEntitySpecificChecks && entity instanceof Player player
+                && itemStates.source(slot) == ItemSourceType.PLAYER_DROP
+                && itemStates.isDroppedBy(slot, player.getUniqueId())) {
+            // 如果拾取者就是丢弃者，检查是否还在自身免疫期内
+            if (currentTime - spawnTick < selfImmuneTicks) {
+                return false;
             }
         }
 
-        // 如果有实体，检查距离
-        if (entity != null) {
-            return item.getLocation().distanceSquared(entity.getLocation()) <= pickupRangeSq;
+        // 如果有实体，检查距离（物品坐标取自索引快照）
+        if (entity != null && !skipDistanceCheck) {
+            Location picker = entity.getLocation(pickerLocation);
+            return itemIndex.distanceSquared(item, picker.getX(), picker.getY(), picker.getZ()) <= pickupRangeSq;
         }
 
         return true; // 没有实体，只检查延迟条件
@@ -390,6 +571,8 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
     // 容器拾取时检测是否是我们的物品
     public boolean hasPickupMark(ItemStack stack) {
         if (stack == null || stack.getType().isAir()) return false;
+        // 没有元数据的物品不可能带标记（避免 getItemMeta 创建副本）
+        if (!stack.hasItemMeta()) return false;
         ItemMeta meta = stack.getItemMeta();
         if (meta == null) return false;
         PersistentDataContainer pdc = meta.getPersistentDataContainer();
@@ -445,6 +628,11 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
             return original;
         }
 
+        // 插件不再写入物品元数据，只有旧版本遗留的物品需要清理
+        if (!hasPickupMark(original)) {
+            return original.clone();
+        }
+
         Material type = original.getType();
 
         // 保护带状态的方块物品
@@ -483,6 +671,16 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         }
     }
 
+    /**
+     * 复制物品并设置数量（保留名称、附魔等元数据）
+     * 只用于已确认与干净的拾取物品相似的槽位物品，不会带有插件标记，无需再清理（避免复制元数据）
+     */
+    private ItemStack withAmount(ItemStack stack, int amount) {
+        ItemStack copy = stack.clone();
+        copy.setAmount(amount);
+        return copy;
+    }
+
     private static final Set<Material> BLOCK_ITEMS_WITH_NBT = Set.of(
             // 潜影盒（所有颜色）
             Material.SHULKER_BOX,
@@ -588,6 +786,9 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
             item.remove();
             // 从索引中移除
             itemIndex.unregisterItem(item);
+        } else {
+            // 生物没有背包事件，只按退避到期后重试
+            itemStates.backoff(item, world.getGameTime());
         }
     }
 
@@ -669,35 +870,56 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         if (originalStack.getAmount() <= 0) return;
         int amount = originalStack.getAmount(); // 动画用原始数量
 
+        // 背包读写经由事务暂存，提交时每个槽位只写入一次
+        PickupTransaction tx = transaction(player);
+        try {
+            pickup(player, item, tx, originalStack, amount);
+        } finally {
+            if (!batching) commitPickups();
+        }
+    }
+
+    /**
+     * 在事务中计算放置位置并暂存写入；物品实体的更新或移除立即生效（避免同一物品被重复拾取）
+     */
+    private void pickup(Player player, Item item, PickupTransaction tx, ItemStack originalStack, int amount) {
+        long tick = player.getWorld().getGameTime();
+        InventorySlotModel slots = slotModel(player, tx, tick);
+        boolean rebuilt = false; // 每次拾取最多重建一次
+
         // 创建干净的、可堆叠的物品副本（已清理PDC标签）
-        ItemStack cleanStack = createCleanStack(originalStack);
-        int remainingAmount = cleanStack.getAmount();
+        ItemStack cleanStack = null;
+        if (hasPickupMark(originalStack)) {
+            // 旧版本遗留的标记：清理后元数据改变，缓存的指纹失效
+            cleanStack = createCleanStack(originalStack);
+            itemStates.invalidateFingerprint(item);
+        }
+        // 指纹用于快速排除不能堆叠的槽位（类型或元数据有无不同时不做完整比较）
+        long fingerprint = itemStates.fingerprint(item, cleanStack != null ? cleanStack : originalStack);
 
-        PlayerInventory inv = player.getInventory();
+        // 负缓存：背包变化前已确认装不下，不再扫描
+        if (slots.isFull(fingerprint)) {
+            rejectPickup(slots, item, tick);
+            return;
+        }
+        if (cleanStack == null) {
+            cleanStack = originalStack.clone();
+        }
+        int remainingAmount = cleanStack.getAmount();
         boolean anyPickedUp = false;
 
         // ====== 第一阶段：合并（按优先级：副手 → 光标 → 背包）======
 
         // 1. 首先检查副手（最高优先级）- 无论配置如何，合并阶段都检查
         if (remainingAmount > 0) {
-            ItemStack offhand = inv.getItemInOffHand();
+            ItemStack offhand = tx.getOffhand();
             // 副手有相同物品且未满（合并，不关心配置）
-            if (offhand.isSimilar(cleanStack) && offhand.getAmount() < offhand.getMaxStackSize()) {
+            if (ItemFingerprint.isSimilar(cleanStack, offhand) && offhand.getAmount() < offhand.getMaxStackSize()) {
                 int space = offhand.getMaxStackSize() - offhand.getAmount();
                 if (space > 0) {
                     int toAdd = Math.min(space, remainingAmount);
-                    // ✅ 清理PDC标签
-                    ItemStack newOffhand = createCleanStack(new ItemStack(offhand.getType(), offhand.getAmount() + toAdd));
                     // 保留原物品的其他元数据（名称、附魔等）
-                    if (offhand.hasItemMeta()) {
-                        ItemMeta meta = offhand.getItemMeta().clone();
-                        // 手动清理pdc标签
-                        meta.getPersistentDataContainer().remove(SOURCE_KEY);
-                        meta.getPersistentDataContainer().remove(SPAWN_TICK_KEY);
-                        meta.getPersistentDataContainer().remove(DROPPED_BY_KEY);
-                        newOffhand.setItemMeta(meta);
-                    }
-                    inv.setItemInOffHand(newOffhand);
+                    tx.setOffhand(withAmount(offhand, offhand.getAmount() + toAdd));
                     remainingAmount -= toAdd;
                     anyPickedUp = true;
                 }
@@ -706,81 +928,83 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
 
         // 2. 检查光标（手持物品）
         if (remainingAmount > 0) {
-            ItemStack cursor = player.getItemOnCursor();
-            if (!cursor.getType().isAir() && cursor.isSimilar(cleanStack)) {
+            ItemStack cursor = tx.getCursor();
+            if (!cursor.getType().isAir() && ItemFingerprint.isSimilar(cleanStack, cursor)) {
                 int space = cursor.getMaxStackSize() - cursor.getAmount();
                 if (space > 0) {
                     int toAdd = Math.min(space, remainingAmount);
-                    // ✅ 清理PDC标签
-                    ItemStack newCursor = createCleanStack(new ItemStack(cursor.getType(), cursor.getAmount() + toAdd));
-                    if (cursor.hasItemMeta()) {
-                        ItemMeta meta = cursor.getItemMeta().clone();
-                        meta.getPersistentDataContainer().remove(SOURCE_KEY);
-                        meta.getPersistentDataContainer().remove(SPAWN_TICK_KEY);
-                        meta.getPersistentDataContainer().remove(DROPPED_BY_KEY);
-                        newCursor.setItemMeta(meta);
-                    }
-                    player.setItemOnCursor(newCursor);
+                    tx.setCursor(withAmount(cursor, cursor.getAmount() + toAdd));
                     remainingAmount -= toAdd;
                     anyPickedUp = true;
                 }
             }
         }
 
-        // 3. 检查背包（0-35槽）
+        // 3. 检查背包（0-35槽）：按槽位模型直接取同指纹且未满的槽位（按槽位顺序）
         if (remainingAmount > 0) {
-            for (int slot = 0; slot < 36; slot++) {
-                if (remainingAmount == 0) break;
-
-                ItemStack existing = inv.getItem(slot);
-                if (existing != null && existing.isSimilar(cleanStack)) {
-                    int space = existing.getMaxStackSize() - existing.getAmount();
-                    if (space > 0) {
-                        int toAdd = Math.min(space, remainingAmount);
-                        // ✅ 清理PDC标签
-                        ItemStack newExisting = createCleanStack(new ItemStack(existing.getType(), existing.getAmount() + toAdd));
-                        if (existing.hasItemMeta()) {
-                            ItemMeta meta = existing.getItemMeta().clone();
-                            meta.getPersistentDataContainer().remove(SOURCE_KEY);
-                            meta.getPersistentDataContainer().remove(SPAWN_TICK_KEY);
-                            meta.getPersistentDataContainer().remove(DROPPED_BY_KEY);
-                            newExisting.setItemMeta(meta);
-                        }
-                        inv.setItem(slot, newExisting);
-                        remainingAmount -= toAdd;
-                        anyPickedUp = true;
+            long candidates = slots.partialSlots(fingerprint);
+            while (candidates != 0 && remainingAmount > 0) {
+                int slot = Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+
+                ItemStack existing = tx.get(slot);
+                if (!slots.matches(slot, existing)) {
+                    // 模型已过期（未通知的修改），重建后重新查找
+                    if (!rebuilt) {
+                        rebuildSlotModel(slots, tx, tick);
+                        rebuilt = true;
+                        candidates = slots.partialSlots(fingerprint);
                     }
+                    continue;
                 }
+                // 指纹相同仍需完整比较（哈希碰撞）
+                if (!ItemFingerprint.isSimilar(cleanStack, existing)) continue;
+
+                int toAdd = Math.min(slots.maxSize(slot) - slots.amount(slot), remainingAmount);
+                int newAmount = existing.getAmount() + toAdd;
+                tx.set(slot, withAmount(existing, newAmount));
+                slots.update(slot, fingerprint, newAmount, slots.maxSize(slot));
+                remainingAmount -= toAdd;
+                anyPickedUp = true;
             }
         }
 
         // ====== 第二阶段：放置到空槽（按原版顺序：0-35槽）======
         if (remainingAmount > 0) {
-            // 按原版顺序从0到35寻找空槽位
-            for (int slot = 0; slot < 36; slot++) {
-                if (remainingAmount <= 0) break;
-
-                if (inv.getItem(slot) == null) {
-                    int toPlace = Math.min(remainingAmount, cleanStack.getType().getMaxStackSize());
-                    ItemStack newStack = cleanStack.clone(); // ✅ 使用干净的副本
-                    newStack.setAmount(toPlace);
-                    inv.setItem(slot, newStack);
-                    remainingAmount -= toPlace;
-                    anyPickedUp = true;
+            int maxStackSize = cleanStack.getType().getMaxStackSize();
+            long free = slots.freeSlots();
+            while (free != 0 && remainingAmount > 0) {
+                int slot = Long.numberOfTrailingZeros(free);
+                free &= free - 1;
+
+                if (!slots.matches(slot, tx.get(slot))) {
+                    if (!rebuilt) {
+                        rebuildSlotModel(slots, tx, tick);
+                        rebuilt = true;
+                        free = slots.freeSlots();
+                    }
+                    continue;
                 }
+                int toPlace = Math.min(remainingAmount, maxStackSize);
+                ItemStack newStack = cleanStack.clone(); // ✅ 使用干净的副本
+                newStack.setAmount(toPlace);
+                tx.set(slot, newStack);
+                slots.update(slot, fingerprint, toPlace, maxStackSize);
+                remainingAmount -= toPlace;
+                anyPickedUp = true;
             }
         }
 
         // ====== 第三阶段：根据配置决定是否放置到副手空槽 ======
         if (remainingAmount > 0) {
-            ItemStack offhand = inv.getItemInOffHand();
+            ItemStack offhand = tx.getOffhand();
 
             // 只有当配置允许时，才放置到空的副手
             if (offhand.getType() == Material.AIR && config.isOffhandPickupEnabled()) {
                 int toPlace = Math.min(remainingAmount, cleanStack.getType().getMaxStackSize());
                 ItemStack newStack = cleanStack.clone(); // ✅ 使用干净的副本
                 newStack.setAmount(toPlace);
-                inv.setItemInOffHand(newStack);
+                tx.setOffhand(newStack);
                 remainingAmount -= toPlace;
                 anyPickedUp = true;
             }
@@ -788,11 +1012,8 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
 
         // ====== 最终处理 ======
         if (anyPickedUp) {
-            World world = player.getWorld();
-            Location loc = item.getLocation();
-
-            PacketUtils.sendPickupAnimation(plugin, player, item, amount);
-            world.playSound(loc, Sound.ENTITY_ITEM_PICKUP, 0.2f, (float) (0.8 + Math.random() * 0.4));
+            // 动画发给所有追踪该物品的玩家，与音效一起在本tick末统一发出
+            broadcaster.pickup(player, item, amount);
 
             if (remainingAmount > 0) {
                 // 还有剩余，更新物品实体
@@ -800,11 +1021,18 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
                 remainingStack.setAmount(remainingAmount);
                 item.setItemStack(remainingStack);
             } else {
-                // 全部拾取完成，移除物品实体
-                item.remove();
-                // 从索引中移除
+                // 全部拾取完成：先从索引与合并器中移除（不会再被拾取或合并），动画发出后再移除物品实体
                 itemIndex.unregisterItem(item);
+                CustomItemMerger merger = getCustomItemMerger();
+                if (merger != null) {
+                    merger.forgetItem(item);
+                }
+                broadcaster.removeAfterFlush(item);
             }
+        } else {
+            // 一个也放不下：记入负缓存，物品进入退避
+            slots.markFull(fingerprint);
+            rejectPickup(slots, item, tick);
         }
     }
 
@@ -820,11 +1048,16 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
 
         // 根据配置启动相应的驱动模式
         if (config.isPlayerDriven()) {
-            startPlayerDriven(); // 启动玩家驱动模式
+            if (config.isBroadPhase()) {
+                startBroadPhase(); // 玩家驱动改由每tick粗筛完成
+            } else {
+                startPlayerDriven(); // 启动玩家驱动模式
+            }
         }
         if (config.isItemDrivenEnabled()) {
             startItemDriven(); // 启动物品驱动模式
         }
+        startEffects(); // 必须在拾取任务之后创建
     }
 
     /**
@@ -841,12 +1074,32 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
             activePlayerUpdater = null;
         }
         activePlayers.clear(); // 清空活跃玩家列表
+        if (broadPhaseTask != null) {
+            broadPhaseTask.cancel();
+            broadPhaseTask = null;
+        }
+        interestCache.clear();
 
         // 停止物品驱动模式相关任务
         if (itemDetectionTask != null) {
             itemDetectionTask.cancel();
             itemDetectionTask = null;
         }
+        itemDrivenWorlds.clear();
+
+        // 发出尚未发送的拾取动画，并移除等待动画的物品实体（须在写回状态之前）
+        if (effectsTask != null) {
+            effectsTask.cancel();
+            effectsTask = null;
+        }
+        broadcaster.clear();
+
+        // 把物品状态写回 PDC（重载或重新启用后从 PDC 重新读取）
+        for (World world : Bukkit.getWorlds()) {
+            persistWorld(world);
+        }
+        itemStates.clear();
+        slotModels.clear();
 
         // 恢复原版物品拾取延迟为0（立即可拾取）
         restoreOriginalPickupDelayToZero();
@@ -861,14 +1114,7 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         for (World world : Bukkit.getWorlds()) {
             for (Entity entity : world.getEntities()) {
                 if (entity instanceof Item item) {
-                    try {
-                        // 使用反射恢复pickupDelay为0（立即可拾取）
-                        Object nmsItem = getGetHandleMethod().invoke(item);
-                        Field field = getItemPickupDelayField();
-                        field.set(nmsItem, 0); // 设置为0，立即可拾取
-                    } catch (Exception ignored) {
-                        // 忽略反射异常
-                    }
+                    NmsAccess.setPickupDelay(item, 0); // 设置为0，立即可拾取
                 }
             }
         }
@@ -884,44 +1130,152 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
                 config.getPlayerMoveCheckIntervalTicks() + " ticks");
     }
 
+    /**
+     * 启动拾取反馈任务
+     * 每tick把本tick排队的拾取动画按观看者合并为一个 bundle 发出，并移除等待动画的物品实体。
+     * 同一tick内任务按创建顺序执行，该任务在拾取任务之后创建，因此在它们之后、实体tick之前运行：
+     * 等待移除的物品不会被漏斗吸入、被原版合并或随区块保存；玩家移动触发的拾取发生在两个tick之间，
+     * 由下一tick的该任务发出。
+     */
+    private void startEffects() {
+        effectsTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                broadcaster.flush(Bukkit.getCurrentTick());
+            }
+        };
+        effectsTask.runTaskTimer(plugin, 1, 1);
+    }
+
+    /**
+     * 启动粗筛模式
+     * 每tick把在线玩家按世界分组，每组与该世界的全部物品做一次排序扫描，得到的（玩家, 物品）组合
+     * 交给与玩家驱动模式相同的 canPickupNow / performPickup 处理
+     */
+    private void startBroadPhase() {
+        broadPhaseTask = new BukkitRunnable() {
+            @Override
+            public void run() {
+                runBroadPhase();
+            }
+        };
+        broadPhaseTask.runTaskTimer(plugin, 1, 1);
+        plugin.getLogger().info("玩家驱动模式已启用（粗筛：每tick排序扫描配对）");
+    }
+
+    private void runBroadPhase() {
+        boolean batch = beginBatch();
+        try {
+            sweepBroadPhase();
+        } finally {
+            if (batch) commitBatch();
+        }
+    }
+
+    private void sweepBroadPhase() {
+        List<Player> pending = broadPhasePending;
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            if (player.getGameMode() != GameMode.SPECTATOR && !player.isDead()) {
+                pending.add(player);
+            }
+        }
+
+        double range = Math.sqrt(pickupRangeSq);
+        while (!pending.isEmpty()) {
+            // 取出与末尾玩家同一世界的所有玩家（用末尾元素填补，不移动数组）
+            World world = pending.get(pending.size() - 1).getWorld();
+            broadPhase.clearPickers();
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                Player player = pending.get(i);
+                if (player.getWorld() != world) continue;
+                int last = pending.size() - 1;
+                pending.set(i, pending.get(last));
+                pending.remove(last);
+
+                // 附近区块没有物品的玩家不参与扫描
+                Location loc = player.getLocation(pickerLocation);
+                if (itemIndex.mayHaveItemsNear(loc)) {
+                    broadPhaseGroup.add(player);
+                    broadPhase.addPicker(loc.getX(), loc.getY(), loc.getZ());
+                }
+            }
+
+            if (!broadPhaseGroup.isEmpty() && itemIndex.hasItemsInWorld(world)) {
+                broadPhase.loadItems(itemIndex, world);
+                broadPhase.sweep(range, broadPhasePairHandler);
+            }
+            broadPhaseGroup.clear(); // 不跨tick持有玩家引用
+        }
+    }
+
+    /**
+     * 处理粗筛得到的一个（玩家, 物品）组合（距离已精确检查）
+     */
+    private void pickupBroadPhasePair(int picker, int entityId, double distanceSq) {
+        // 物品可能已被同一轮中更早的组合拾取
+        Item item = itemIndex.getItem(entityId);
+        if (item == null) return;
+        Player player = broadPhaseGroup.get(picker);
+        if (canPickupNow(player, item, false, true)) {
+            performPickup(player, item);
+        }
+    }
+
+    /**
+     * 粗筛模式是否在运行（运行时玩家移动事件不再单独触发拾取）
+     */
+    public boolean isBroadPhaseActive() {
+        return broadPhaseTask != null;
+    }
+
+    /**
+     * 最近一次粗筛的规模：{拾取者数, 物品数, 候选组合数}
+     */
+    public int[] getBroadPhaseStats() {
+        return new int[]{broadPhase.getLastPickers(), broadPhase.getLastItems(), broadPhase.getLastPairs()};
+    }
+
     /**
      * 启动物品驱动模式
      * 定期扫描活跃物品并尝试可被拾取生物拾取
      */
     private void startItemDriven() {
         int checkInterval = config.getPickupAttemptIntervalTicks();
+        itemDrivenWorlds.clear();
+        itemDrivenWorlds.addAll(Bukkit.getWorlds());
         itemDetectionTask = new BukkitRunnable() {
             private int scanIndex = 0; // 用于轮询物品
-            private final List<World> worlds = new ArrayList<>();
+            // 本轮待处理的物品（复用）
+            private final List<Item> batch = new ArrayList<>();
 
             @Override
             public void run() {
-                // 获取所有世界（避免每次创建新列表）
-                if (worlds.isEmpty()) {
-                    worlds.addAll(Bukkit.getWorlds());
-                }
-
-                // 轮询机制：每次只处理一个世界的部分物品
+                // 轮询机制：每次只处理一个世界的部分物品（世界列表由加载/卸载事件维护，避免每次创建新列表）
+                List<World> worlds = itemDrivenWorlds;
                 if (worlds.isEmpty()) return;
 
                 World world = worlds.get(scanIndex % worlds.size());
                 scanIndex++;
 
-                // ✅ 修复：使用正确的方法名
-                Set<Item> allItems = itemIndex.getAllItemsInWorld(world);
-                if (allItems == null || allItems.isEmpty()) return;
+                int itemCount = itemIndex.getItemCount(world);
+                if (itemCount == 0) return;
 
-                // 将物品转换为列表以便轮询
-                List<Item> itemList = new ArrayList<>(allItems);
-                if (itemList.isEmpty()) return;
+                // 每次最多处理一定数量的物品，从轮询位置开始直接遍历索引收集，不复制整个世界的物品
+                int maxItemsPerScan = Math.min(20, itemCount / 4 + 1);
+                itemIndex.collectInWorld(world, scanIndex % itemCount, maxItemsPerScan, batch);
 
-                // 每次最多处理一定数量的物品
-                int maxItemsPerScan = Math.min(20, itemList.size() / 4 + 1);
-                int startIdx = scanIndex % itemList.size();
+                boolean started = beginBatch();
+                try {
+                    pickupBatch();
+                } finally {
+                    if (started) commitBatch();
+                    batch.clear(); // 不跨tick持有实体引用
+                }
+            }
 
-                for (int i = 0; i < maxItemsPerScan; i++) {
-                    int idx = (startIdx + i) % itemList.size();
-                    Item item = itemList.get(idx);
+            private void pickupBatch() {
+                for (int i = 0, n = batch.size(); i < n; i++) {
+                    Item item = batch.get(i);
 
                     if (item.isDead() || !item.isValid()) {
                         // 从索引中移除无效物品
@@ -967,12 +1321,16 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      * @return 最近的拾取者，如果没有则返回null
      */
     private LivingEntity findNearestPicker(Item item) {
-        Location loc = item.getLocation();
+        // 物品坐标取自索引快照
+        Location loc = itemIndex.readPosition(item, itemLocation);
+        double ix = loc.getX(), iy = loc.getY(), iz = loc.getZ();
         double range = config.getPickupRange();
         double rangeSq = range * range;
 
         LivingEntity nearestPicker = null;
         double nearestDistSq = Double.MAX_VALUE;
+        long fingerprint = 0;
+        boolean hasFingerprint = false;
 
         // 查找范围内的所有生物和玩家
         for (Entity entity : loc.getWorld().getNearbyEntities(loc, range, range, range)) {
@@ -982,11 +1340,22 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
             if (!isEligiblePicker(livingEntity)) continue;
 
             // 快速距离检查
-            double distSq = livingEntity.getLocation().distanceSquared(loc);
+            Location picker = livingEntity.getLocation(pickerLocation);
+            double dx = picker.getX() - ix, dy = picker.getY() - iy, dz = picker.getZ() - iz;
+            double distSq = dx * dx + dy * dy + dz * dz;
             if (distSq > rangeSq || distSq >= nearestDistSq) continue;
 
-            // 检查是否有自我免疫限制
-            if (!canPickupNow(livingEntity, item)) continue;
+            // 跳过已确认装不下该物品的玩家，让更远但有空位的拾取者拾取
+            if (livingEntity instanceof Player player) {
+                if (!hasFingerprint) {
+                    fingerprint = itemStates.fingerprint(item, item.getItemStack());
+                    hasFingerprint = true;
+                }
+                if (isKnownFull(player, fingerprint)) continue;
+            }
+
+            // 检查是否有自我免疫限制（距离已检查，跳过重复的距离计算）
+            if (!canPickupNow(livingEntity, item, false, true)) continue;
 
             nearestPicker = livingEntity;
             nearestDistSq = distSq;
@@ -1015,14 +1384,14 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
      * 检查物品是否在活跃期内
      */
     private boolean isItemActive(Item item) {
-        PersistentDataContainer pdc = item.getPersistentDataContainer();
-        Long spawnTick = pdc.get(SPAWN_TICK_KEY, PersistentDataType.LONG);
+        long spawnTick = itemStates.spawnTick(itemStates.slotOf(item));
 
-        if (spawnTick == null) {
+        if (spawnTick == ItemStateTable.NO_TICK) {
             return true; // 没有记录时间，默认活跃
         }
 
-        long currentTick = item.getWorld().getFullTime();
+        // 生成时间按游戏时间（getGameTime）记录，这里使用同一时钟
+        long currentTick = item.getWorld().getGameTime();
         return currentTick - spawnTick <= activeDetectionTicks;
     }
 
@@ -1039,90 +1408,8 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         return false;
     }
 
-    // ====== 反射工具（增强版）======
-    private static volatile Field cachedPickupDelayField = null;
-
-    /**
-     * 获取ItemEntity类的pickupDelay字段（反射）
-     * 支持多个Minecraft版本
-     * @return pickupdelay字段对象
-     */
-    private static Field getItemPickupDelayField() {
-        // 如果已缓存，直接返回
-        if (cachedPickupDelayField != null) {
-            return cachedPickupDelayField;
-        }
-
-        Class<?> nmsItemClass;
-        try {
-            // 尝试1.17+的新映射类名（Mojang映射）
-            nmsItemClass = Class.forName("net.minecraft.world.entity.item.ItemEntity");
-        } catch (ClassNotFoundException e1) {
-            try {
-                // 尝试1.16及以下的旧NMS路径（CraftBukkit映射）
-                String version = Bukkit.getServer().getClass().getPackage().getName().split("\\.")[3];
-                nmsItemClass = Class.forName("net.minecraft.server." + version + ".EntityItem");
-            } catch (Exception e2) {
-                // 两个版本都失败，抛出运行时异常
-                throw new RuntimeException("Unsupported server version for Item pickupDelay reflection.", e2);
-            }
-        }
-
-        // 常见字段名候选（按版本排序，支持多个混淆名称）
-        String[] candidates = {
-                "pickupDelay",   // 未混淆（如开发环境、部分Paper服务器）
-                "bK",            // 1.17 ~ 1.19.4 (yarn/mojang 混淆名称)
-                "c",             // 1.20.0 ~ 1.20.4
-                "d",             // 1.20.5+ （观察到的部分版本）
-                "e"              // 预防未来变化的候选
-        };
-
-        // 尝试所有候选字段名
-        for (String fieldName : candidates) {
-            try {
-                Field field = nmsItemClass.getDeclaredField(fieldName);
-                // 验证字段类型为int（确保找到正确的字段）
-                if (field.getType() == int.class) {
-                    field.setAccessible(true); // 设置可访问
-                    cachedPickupDelayField = field; // 缓存找到的字段
-                    return field;
-                }
-            } catch (NoSuchFieldException ignored) {
-                // 尝试下一个候选字段名
-            }
-        }
-
-        // 所有候选都失败 → 抛出异常
-        throw new RuntimeException("Could not find pickupDelay field in " + nmsItemClass.getName());
-    }
-
     // ====== 辅助枚举与解析 ======
 
-    /**
-     * 物品来源类型枚举
-     */
-    private enum ItemSourceType {
-        PLAYER_DROP,    // 玩家丢弃（按Q键）
-        NATURAL_DROP,   // 自然掉落（方块挖掘、实体死亡等）
-        INSTANT_PICKUP, // 立即拾取（特殊来源）
-        UNKNOWN         // 未知来源
-    }
-
-    /**
-     * 解析字符串为物品来源类型
-     * @param str 来源字符串
-     * @return 对应的itemsourcetype枚举值
-     */
-    private ItemSourceType parseSource(String str) {
-        if (str == null) return ItemSourceType.UNKNOWN;
-        try {
-            return ItemSourceType.valueOf(str);
-        } catch (IllegalArgumentException e) {
-            // 字符串无法解析为已知枚举值
-            return ItemSourceType.UNKNOWN;
-        }
-    }
-
     /**
      * 根据物品来源类型获取要求的拾取延迟
      * @param source 物品来源类型
@@ -1138,25 +1425,15 @@ public class PickupManager implements PickupConfig.ConfigChangeListener {
         };
     }
 
-    private static volatile Method cachedGetHandleMethod = null;
-
     /**
-     * 获取CraftItem.getHandle()方法（反射）
-     * @return gethandle方法对象
-     * @throws Exception 反射相关异常
+     * 把各来源的拾取延迟同步到状态表（重算可拾取时间）
      */
-    private static Method getGetHandleMethod() throws Exception {
-        // 如果已缓存，直接返回
-        if (cachedGetHandleMethod != null) {
-            return cachedGetHandleMethod;
-        }
-
-        String version = Bukkit.getServer().getClass().getPackage().getName().split("\\.")[3];
-        Class<?> craftEntityClass = Class.forName("org.bukkit.craftbukkit." + version + ".entity.CraftEntity");
-
-        cachedGetHandleMethod = craftEntityClass.getMethod("getHandle");
-        cachedGetHandleMethod.setAccessible(true);
-        return cachedGetHandleMethod;
+    private void applyDelays() {
+        itemStates.setDelays(
+                getRequiredDelay(ItemSourceType.PLAYER_DROP),
+                getRequiredDelay(ItemSourceType.NATURAL_DROP),
+                getRequiredDelay(ItemSourceType.INSTANT_PICKUP),
+                getRequiredDelay(ItemSourceType.UNKNOWN));
     }
 
     /**
@@ -0,0 +1,134 @@
+package pickup.feature;
+
+import org.bukkit.entity.Player;
+import org.bukkit.inventory.ItemStack;
+import org.bukkit.inventory.PlayerInventory;
+
+import java.util.Arrays;
+
+/**
+ * 单个玩家的拾取事务
+ * 拾取时对背包（0-35槽）、副手与光标的读写都先暂存在这里，提交时每个改动过的槽位只写入一次。
+ * 非批量模式下每次拾取单独提交（与逐个写入等价）；批量模式下一次处理调用（玩家移动扫描、
+ * 一轮粗筛、一轮物品驱动扫描）内同一玩家的所有拾取共用一个事务，在调用结束时统一提交。
+ * 事务不跨tick、不跨事件，期间背包不会被其他逻辑修改；槽位模型需要重建时先调用 flush 写回暂存内容。
+ * 仅供主线程使用。
+ */
+final class PickupTransaction {
+
+    private Player player;
+    private PlayerInventory inv;
+
+    private final ItemStack[] slots = new ItemStack[InventorySlotModel.SLOTS];
+    private long loaded; // 已读取的槽位（位图）
+    private long dirty;  // 已修改、待写入的槽位（位图）
+
+    private ItemStack offhand, cursor;
+    private boolean offhandLoaded, offhandDirty;
+    private boolean cursorLoaded, cursorDirty;
+
+    boolean isOpen() {
+        return player != null;
+    }
+
+    void begin(Player player) {
+        this.player = player;
+        this.inv = player.getInventory();
+    }
+
+    PlayerInventory getInventory() {
+        return inv;
+    }
+
+    ItemStack get(int slot) {
+        long bit = 1L << slot;
+        if ((loaded & bit) == 0) {
+            slots[slot] = inv.getItem(slot);
+            loaded |= bit;
+        }
+        return slots[slot];
+    }
+
+    void set(int slot, ItemStack stack) {
+        long bit = 1L << slot;
+        slots[slot] = stack;
+        loaded |= bit;
+        dirty |= bit;
+    }
+
+    ItemStack getOffhand() {
+        if (!offhandLoaded) {
+            offhand = inv.getItemInOffHand();
+            offhandLoaded = true;
+        }
+        return offhand;
+    }
+
+    void setOffhand(ItemStack stack) {
+        offhand = stack;
+        offhandLoaded = true;
+        offhandDirty = true;
+    }
+
+    ItemStack getCursor() {
+        if (!cursorLoaded) {
+            cursor = player.getItemOnCursor();
+            cursorLoaded = true;
+        }
+        return cursor;
+    }
+
+    void setCursor(ItemStack stack) {
+        cursor = stack;
+        cursorLoaded = true;
+        cursorDirty = true;
+    }
+
+    /**
+     * 把暂存的改动写入背包（事务保持打开）
+     */
+    void flush() {
+        long pending = dirty;
+        while (pending != 0) {
+            int slot = Long.numberOfTrailingZeros(pending);
+            pending &= pending - 1;
+            inv.setItem(slot, slots[slot]);
+        }
+        dirty = 0;
+        if (offhandDirty) {
+            inv.setItemInOffHand(offhand);
+            offhandDirty = false;
+        }
+        if (cursorDirty) {
+            player.setItemOnCursor(cursor);
+            cursorDirty = false;
+        }
+    }
+
+    /**
+     * 写入全部改动并关闭事务
+     */
+    void commit() {
+        if (player == null) return;
+        try {
+            flush();
+        } finally {
+            close();
+        }
+    }
+
+    /**
+     * 关闭事务并丢弃未写入的改动（不持有玩家与物品的引用）
+     */
+    void close() {
+        Arrays.fill(slots, null);
+        loaded = 0;
+        dirty = 0;
+        offhand = null;
+        cursor = null;
+        offhandLoaded = offhandDirty = false;
+        cursorLoaded = cursorDirty = false;
+        player = null;
+        inv = null;
+    }
+}
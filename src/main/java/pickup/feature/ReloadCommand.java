@@ -11,6 +11,8 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.annotations.UnknownNullability;
 import pickup.Main;
 import pickup.config.PickupConfig;
+import pickup.tool.NmsAccess;
+import pickup.tool.RangeFilter;
 
 import java.io.File;
 import java.io.IOException;
@@ -203,6 +205,10 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
         }
 
         if (args.length == 3) {
+            if (args[1].equals("index.backend")) {
+                return filterCompletions(new ArrayList<>(Arrays.asList(SpatialIndex.BACKEND_CHUNK_HASH,
+                        SpatialIndex.BACKEND_GRID, SpatialIndex.BACKEND_OCTREE)), args[2]);
+            }
             // 只对布尔值配置项进行补全
             return completeBooleanValue(args[1], args[2]);
         }
@@ -221,7 +227,9 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
                 key.endsWith(".enabled") ||
                         key.contains("player-driven") ||
                         key.contains("item-driven") ||
+                        key.contains("broad-phase") ||
                         key.contains("offhand-pickup") ||
+                        key.contains("batch-pickup") ||
                         key.contains("send-private-message") ||
                         key.equals("enabled");
 
@@ -440,6 +448,7 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
                         key.contains("delay") ||
                         key.contains("ticks") ||
                         key.contains("interval") ||
+                        key.contains("cell-size") ||
                         key.equals("pickup.range");
         if (shouldBeNumber) {
             try {
@@ -452,6 +461,9 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
                 if ((key.contains("ticks") || key.contains("delay") || key.contains("interval")) && (num < 0 || num > 1000)) {
                     throw new IllegalArgumentException("Tick 值应在 0 - 1000 之间");
                 }
+                if (key.contains("cell-size") && num != 0 && num != 2 && num != 4 && num != 8 && num != 16) {
+                    throw new IllegalArgumentException("网格边长只能是 0(自动)、2、4、8 或 16");
+                }
 
                 return num; // 返回 Double
             } catch (NumberFormatException e) {
@@ -459,7 +471,17 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
             }
         }
 
-        // 3. 其他情况保留为字符串
+        // 3. 空间索引后端只接受已知名称
+        if (key.equals("index.backend")) {
+            String backend = valueStr.toLowerCase();
+            if (!backend.equals(SpatialIndex.BACKEND_CHUNK_HASH) && !backend.equals(SpatialIndex.BACKEND_GRID)
+                    && !backend.equals(SpatialIndex.BACKEND_OCTREE)) {
+                throw new IllegalArgumentException("索引后端只能是 chunk-hash、grid 或 octree");
+            }
+            return backend;
+        }
+
+        // 4. 其他情况保留为字符串
         return valueStr;
     }
 
@@ -506,6 +528,31 @@ public class ReloadCommand implements CommandExecutor, TabCompleter {
             sender.sendMessage("  §7• 合并范围: §e" + config.getItemMergeRange() + " 方块");
         }
 
+        // 空间索引状态
+        SpatialIndex index = plugin.getItemSpatialIndex();
+        if (index != null) {
+            sender.sendMessage("§7空间索引: §e" + index.getBackendName() + " §7(网格 " + index.getCellSize() +
+                    " 方块，已索引 " + index.getIndexedCount() + " 个物品，移动中 " + index.getMovingCount() + " 个)");
+            sender.sendMessage("  §7• 距离过滤: §e" + RangeFilter.get().getName());
+            sender.sendMessage("  §7• 移动过滤: §e放行 " + index.getOccupancyHits() + " §7/ §e拒绝 " + index.getOccupancyMisses());
+            sender.sendMessage("  §7• 增量清理: §e已完成 " + index.getCompletedSweeps() + " 轮 §7(上一轮清除 " +
+                    index.getLastSweepReclaimed() + " 个，累计 " + index.getTotalReclaimed() + " 个)");
+        }
+        PickupManager manager = plugin.getPickupManager();
+        if (manager != null) {
+            PickupInterestCache interests = manager.getInterestCache();
+            if (manager.isBroadPhaseActive()) {
+                int[] sweep = manager.getBroadPhaseStats();
+                sender.sendMessage("  §7• 粗筛: §e" + sweep[0] + " 名拾取者 × " + sweep[1] + " 个物品 §7-> §e" +
+                        sweep[2] + " §7个候选组合（最近一个世界）");
+            }
+            sender.sendMessage("  §7• 兴趣集合: §e" + interests.size() + " 名玩家 §7(命中 " + interests.getHits() +
+                    " 次，重建 " + interests.getRebuilds() + " 次)");
+            sender.sendMessage("  §7• 物品状态表: §e" + manager.getItemStateCount() + " 条记录 §7(从 PDC 读取 " +
+                    manager.getItemStateLoads() + " 次，其中旧格式 " + manager.getItemStateLegacyLoads() + " 次)");
+            sender.sendMessage("  §7• 拾取延迟: §e" + NmsAccess.getPickupDelayPath().getDisplayName());
+        }
+
         // 死亡日志状态
         sender.sendMessage("§7死亡日志: " + (config.isDeathLogEnabled() ? "§a启用" : "§c禁用"));
 
@@ -0,0 +1,249 @@
+package pickup.feature;
+
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+import pickup.Main;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 物品空间索引接口
+ * 拾取管理器、合并器与事件监听器只依赖此接口；具体的数据结构（后端）由配置 index.backend 选择，
+ * /up reload 时按新配置重新创建，从而可以在真实负载下比较不同后端。
+ * 除 {@link #getSnapshot()} 外，所有方法都只能在主线程调用。
+ */
+public interface SpatialIndex {
+
+    /** 后端：区块哈希（按区块分桶，区块内按纵向分段与网格细分） */
+    String BACKEND_CHUNK_HASH = "chunk-hash";
+    /** 后端：均匀网格（整个世界按立方体网格哈希分桶，不区分区块） */
+    String BACKEND_GRID = "grid";
+    /** 后端：八叉树（按物品密度自适应细分，适合密集物品堆） */
+    String BACKEND_OCTREE = "octree";
+
+    /**
+     * 按配置创建索引
+     * @param plugin 插件主类（读取 index.backend 与网格边长等配置）
+     * @return 配置的后端；未知名称时记录警告并使用区块哈希
+     */
+    static SpatialIndex create(Main plugin) {
+        String backend = plugin.getPickupConfig().getIndexBackend();
+        switch (backend.toLowerCase(Locale.ROOT)) {
+            case BACKEND_CHUNK_HASH:
+                return new ItemSpatialIndex(plugin);
+            case BACKEND_GRID:
+                return new UniformGridIndex(plugin);
+            case BACKEND_OCTREE:
+                return new OctreeSpatialIndex(plugin);
+            default:
+                plugin.getLogger().warning("未知的空间索引后端: " + backend + "，已使用 " + BACKEND_CHUNK_HASH);
+                return new ItemSpatialIndex(plugin);
+        }
+    }
+
+    /**
+     * 物品访问回调（查询期间不得增删索引中的物品；需要增删时请先用 collect 系列方法收集）
+     */
+    @FunctionalInterface
+    interface ItemVisitor {
+        /**
+         * @param item 命中的物品
+         * @return true 继续遍历，false 提前结束
+         */
+        boolean visit(Item item);
+    }
+
+    /**
+     * 实体ID访问回调（不解析实体，用于只需要ID的调用方）
+     */
+    @FunctionalInterface
+    interface IdVisitor {
+        /**
+         * @param entityId 命中物品的实体ID
+         * @return true 继续遍历，false 提前结束
+         */
+        boolean visit(int entityId);
+    }
+
+    /**
+     * 快照坐标访问回调（不解析实体）
+     */
+    @FunctionalInterface
+    interface PositionVisitor {
+        void visit(int entityId, double x, double y, double z);
+    }
+
+    /**
+     * 索引变更监听器：条目登记、移除与快照坐标更新时同步回调（主线程，回调中不得修改索引）
+     * 坐标均为快照坐标；移除时为条目最后的快照坐标
+     */
+    interface ChangeListener {
+        void itemAdded(World world, int entityId, double x, double y, double z);
+
+        void itemRemoved(World world, int entityId, double x, double y, double z);
+
+        void itemMoved(World world, int entityId, double x, double y, double z);
+    }
+
+    /** 后端名称（与配置值一致） */
+    String getBackendName();
+
+    // ========== 增删与移动 ==========
+
+    /** 注册新物品到索引 */
+    void registerItem(Item item);
+
+    /** 从索引中移除物品 */
+    void unregisterItem(Item item);
+
+    /** 唤醒单个物品，使其坐标重新被逐tick跟踪（例如即将穿过传送门或被传送） */
+    void wakeItem(Item item);
+
+    /** 唤醒方块区域附近的所有静止物品（活塞推动、支撑方块被破坏、液体流动、爆炸等） */
+    void wakeArea(World world, int minX, int minY, int minZ, int maxX, int maxY, int maxZ);
+
+    /** 设置变更监听器（只保留一个，传入null取消） */
+    void setChangeListener(ChangeListener listener);
+
+    // ========== 范围查询 ==========
+
+    /**
+     * 遍历指定位置附近的物品（不分配任何对象）
+     * @return 完整遍历返回true，被回调提前结束返回false
+     */
+    boolean forEachNearby(Location center, double range, ItemVisitor visitor);
+
+    /**
+     * 遍历指定坐标附近的物品（不分配任何对象）
+     * @return 完整遍历返回true，被回调提前结束返回false
+     */
+    boolean forEachNearby(World world, double cx, double cy, double cz, double range, ItemVisitor visitor);
+
+    /**
+     * 把指定位置附近的物品收集到调用方提供的缓冲区（先清空）
+     * @return 收集到的数量
+     */
+    int collectNearby(Location center, double range, List<Item> out);
+
+    /** 获取指定位置附近的物品（返回新集合；热路径请使用 forEachNearby / collectNearby） */
+    Set<Item> getNearbyItems(Location center, double range);
+
+    /** 检查站在指定位置时拾取范围内是否可能有物品（快速拒绝，返回true时仍需精确查询） */
+    boolean mayHaveItemsNear(Location location);
+
+    /** 读取物品的快照坐标到 out（物品未被索引时写入其实时坐标） */
+    Location readPosition(Item item, Location out);
+
+    /** 物品快照坐标到指定点的距离平方 */
+    double distanceSquared(Item item, double x, double y, double z);
+
+    /**
+     * 遍历指定坐标附近物品的实体ID（不解析实体、不分配任何对象）
+     * @return 完整遍历返回true，被回调提前结束返回false
+     */
+    boolean forEachNearbyId(World world, double cx, double cy, double cz, double range, IdVisitor visitor);
+
+    /**
+     * 按实体ID解析已索引的物品
+     * @return 未被索引或实体已不存在时返回null
+     */
+    Item getItem(int entityId);
+
+    /**
+     * 按实体ID读取快照坐标到指定点的距离平方
+     * @return 未被索引（或所在区块已卸载）时返回 Double.POSITIVE_INFINITY
+     */
+    double distanceSquared(int entityId, World world, double x, double y, double z);
+
+    // ========== 世界遍历与计数 ==========
+
+    /**
+     * 遍历指定世界中的所有物品
+     * @return 完整遍历返回true，被回调提前结束返回false
+     */
+    boolean forEachInWorld(World world, ItemVisitor visitor);
+
+    /**
+     * 从世界的第 offset 个条目开始（到末尾后回到开头）收集至多 limit 个物品到缓冲区（先清空）
+     * @return 收集到的数量
+     */
+    int collectInWorld(World world, int offset, int limit, List<Item> out);
+
+    /** 遍历指定世界中所有物品的实体ID与快照坐标（不解析实体、不分配任何对象） */
+    void forEachPosition(World world, PositionVisitor visitor);
+
+    /** 获取指定世界中的所有物品（返回新集合；热路径请使用 forEachInWorld） */
+    Set<Item> getAllItemsInWorld(World world);
+
+    /** 检查世界是否有可拾取物品 */
+    boolean hasItemsInWorld(World world);
+
+    /** 指定世界中已索引的物品数量 */
+    int getItemCount(World world);
+
+    /** 当前已索引的物品总数 */
+    int getIndexedCount();
+
+    // ========== 异步读取 ==========
+
+    /**
+     * 最近发布的不可变快照（唯一可以在主线程以外调用的方法）
+     * 有读者时快照任务每tick末尾发布一次；超过 100 tick 无人读取后暂停发布，再次读取后恢复
+     */
+    IndexSnapshot getSnapshot();
+
+    // ========== 区块生命周期与任务 ==========
+
+    /** 把所有已加载世界中现存的物品加入登记队列（插件启用或重载后调用） */
+    void queueLoadedWorlds();
+
+    /** 区块实体加载：把其中的物品作为一个批次加入登记队列 */
+    void queueChunkLoad(World world, List<Entity> entities);
+
+    /** 区块实体卸载：摘除区块内的所有物品 */
+    void evictChunk(World world, int chunkX, int chunkZ);
+
+    /**
+     * 世界卸载：立即释放该世界的所有结构与条目
+     * @return 释放的条目数
+     */
+    int unloadWorld(World world);
+
+    /** 启动快照任务（应在其他拾取/合并任务之前启动） */
+    void startSnapshotTask();
+
+    /** 启动增量清理任务 */
+    void startCleanupTask();
+
+    /** 停止索引的所有定时任务 */
+    void stopTasks();
+
+    /**
+     * 立即完整清理一遍无效物品
+     * @return 清除的条目数
+     */
+    int cleanupInvalidItems();
+
+    // ========== 统计 ==========
+
+    /** 网格/叶节点的边长（方块），用于状态显示 */
+    int getCellSize();
+
+    int getMovingCount();
+
+    int getPendingChunkCount();
+
+    long getOccupancyHits();
+
+    long getOccupancyMisses();
+
+    int getLastSweepReclaimed();
+
+    long getTotalReclaimed();
+
+    int getCompletedSweeps();
+}
@@ -0,0 +1,150 @@
+package pickup.feature;
+
+import org.bukkit.World;
+import pickup.Main;
+import pickup.config.PickupConfig;
+import pickup.tool.LongObjectMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * 均匀网格空间索引
+ * 整个世界按 cellSize 边长的立方体网格划分，网格坐标 (x, y, z) 打包为 long 键直接存入每个世界一张开放寻址表，
+ * 没有区块这一层：查询按三个方向的网格区间逐个查表。
+ * 结构最简单、每次查询的查表次数固定，物品分布较均匀（开放世界零散掉落）时表现稳定；
+ * 网格边长沿用 index.cell-size（0 为按拾取/合并半径自动选择）。
+ */
+public class UniformGridIndex extends AbstractSpatialIndex {
+
+    // y 方向网格坐标可表示的范围（打包键中占12位），超出时取边界网格
+    private static final int MIN_CELL_Y = -2048;
+    private static final int MAX_CELL_Y = 2047;
+
+    // 世界UUID -> 网格键(long) -> 网格桶
+    private final Map<UUID, LongObjectMap<Bucket>> grids = new HashMap<>();
+
+    private final int cellSize;
+    private final int cellShift; // log2(cellSize)
+
+    public UniformGridIndex(Main plugin) {
+        super(plugin);
+
+        PickupConfig config = plugin.getPickupConfig();
+        this.cellSize = resolveCellSize(config.getIndexCellSize(),
+                Math.max(config.getPickupRange(), config.getItemMergeRange()));
+        this.cellShift = Integer.numberOfTrailingZeros(cellSize);
+    }
+
+    @Override
+    public String getBackendName() {
+        return BACKEND_GRID;
+    }
+
+    @Override
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    @Override
+    protected void backendInsert(Entry entry) {
+        LongObjectMap<Bucket> grid = grids.computeIfAbsent(entry.world.getUID(), w -> new LongObjectMap<>());
+        long key = cellKeyOf(entry);
+        Bucket cell = grid.get(key);
+        if (cell == null) {
+            cell = new Bucket();
+            grid.put(key, cell);
+        }
+        cell.add(entry);
+        entry.cellKey = key;
+    }
+
+    @Override
+    protected void backendRemove(Entry entry) {
+        Bucket cell = entry.bucket;
+        if (cell == null) return;
+        cell.remove(entry);
+        if (cell.size == 0) {
+            LongObjectMap<Bucket> grid = grids.get(entry.world.getUID());
+            if (grid != null) {
+                grid.remove(entry.cellKey);
+                if (grid.isEmpty()) {
+                    grids.remove(entry.world.getUID());
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void backendMove(Entry entry) {
+        if (cellKeyOf(entry) == entry.cellKey) {
+            entry.bucket.update(entry);
+            return;
+        }
+        backendRemove(entry);
+        backendInsert(entry);
+    }
+
+    @Override
+    protected void backendUnloadWorld(UUID worldId) {
+        grids.remove(worldId);
+    }
+
+    @Override
+    protected boolean backendQuery(World world, double cx, double cy, double cz, double range, EntryVisitor visitor) {
+        LongObjectMap<Bucket> grid = grids.get(world.getUID());
+        if (grid == null || grid.isEmpty()) {
+            return true;
+        }
+
+        double rangeSq = range * range;
+        int minCellX = (int) Math.floor(cx - range) >> cellShift;
+        int maxCellX = (int) Math.floor(cx + range) >> cellShift;
+        int minCellY = clampCellY((int) Math.floor(cy - range) >> cellShift);
+        int maxCellY = clampCellY((int) Math.floor(cy + range) >> cellShift);
+        int minCellZ = (int) Math.floor(cz - range) >> cellShift;
+        int maxCellZ = (int) Math.floor(cz + range) >> cellShift;
+
+        for (int gx = minCellX; gx <= maxCellX; gx++) {
+            double dx = axisGap(cx, gx << cellShift, cellSize);
+            for (int gz = minCellZ; gz <= maxCellZ; gz++) {
+                double dz = axisGap(cz, gz << cellShift, cellSize);
+                double dxz = dx * dx + dz * dz;
+                if (dxz > rangeSq) continue; // 网格柱与查询圆不相交
+                for (int gy = minCellY; gy <= maxCellY; gy++) {
+                    // 边界网格收纳了超出范围的物品，不做 y 方向剪枝
+                    if (gy != MIN_CELL_Y && gy != MAX_CELL_Y) {
+                        double dy = axisGap(cy, gy << cellShift, cellSize);
+                        if (dxz + dy * dy > rangeSq) continue;
+                    }
+                    Bucket cell = grid.get(cellKey(gx, gy, gz));
+                    if (cell != null && !cell.scan(cx, cy, cz, rangeSq, visitor)) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    private long cellKeyOf(Entry entry) {
+        return cellKey((int) Math.floor(entry.x) >> cellShift,
+                clampCellY((int) Math.floor(entry.y) >> cellShift),
+                (int) Math.floor(entry.z) >> cellShift);
+    }
+
+    private static int clampCellY(int cellY) {
+        return Math.max(MIN_CELL_Y, Math.min(MAX_CELL_Y, cellY));
+    }
+
+    /**
+     * 打包网格坐标：x、z 各26位，y 12位
+     * 网格边长至少为2，世界边界（±3000万格）内的 x、z 网格坐标不会超出26位
+     */
+    private static long cellKey(int cellX, int cellY, int cellZ) {
+        return ((long) (cellX & 0x3FFFFFF) << 38)
+                | ((long) (cellZ & 0x3FFFFFF) << 12)
+                | (cellY & 0xFFF);
+    }
+}
@@ -0,0 +1,56 @@
+package pickup.tool;
+
+import org.bukkit.Material;
+import org.bukkit.inventory.ItemStack;
+
+/**
+ * 物品堆叠指纹（64位）
+ * 高31位为物品类型序号，第32位表示是否带有元数据，低32位为元数据（组件）哈希；不包含数量。
+ * 能够堆叠的两个物品（isSimilar）指纹必然相同，指纹不同即可直接判定不能堆叠；
+ * 指纹相同时仍需完整比较（哈希可能碰撞）。
+ * 计算指纹需要复制一次元数据，调用方应按物品实体缓存结果；缓存可能因其他插件修改物品而过期，
+ * 因此能否堆叠的最终判断（isSimilar）只使用实际的物品，不读取指纹。
+ */
+public final class ItemFingerprint {
+
+    private static final long HAS_META = 1L << 32;
+
+    private ItemFingerprint() {
+    }
+
+    /**
+     * 计算物品的指纹
+     */
+    public static long of(ItemStack stack) {
+        long fingerprint = (long) stack.getType().ordinal() << 33;
+        if (stack.hasItemMeta()) {
+            fingerprint |= HAS_META | (stack.getItemMeta().hashCode() & 0xFFFFFFFFL);
+        }
+        return fingerprint;
+    }
+
+    /**
+     * 指纹对应的物品类型是否为 type（用于发现物品被替换后缓存失效）
+     */
+    public static boolean hasType(long fingerprint, Material type) {
+        return (int) (fingerprint >>> 33) == type.ordinal();
+    }
+
+    /**
+     * 指纹对应的物品是否带有元数据
+     */
+    public static boolean hasMeta(long fingerprint) {
+        return (fingerprint & HAS_META) != 0;
+    }
+
+    /**
+     * 不计算指纹，判断 other 能否与 stack 堆叠：
+     * 类型或是否带元数据不同时直接返回false；都没有元数据时必然可以堆叠；否则完整比较
+     */
+    public static boolean isSimilar(ItemStack stack, ItemStack other) {
+        if (other == null || other.getType() != stack.getType()) return false;
+        boolean otherHasMeta = other.hasItemMeta();
+        if (otherHasMeta != stack.hasItemMeta()) return false;
+        return !otherHasMeta || other.isSimilar(stack);
+    }
+}
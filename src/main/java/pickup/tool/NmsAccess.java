@@ -0,0 +1,212 @@
+package pickup.tool;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Item;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.logging.Logger;
+
+/**
+ * 服务端内部（CraftBukkit/NMS）访问层
+ * 插件启用时探测一次可用的方式，之后每次调用不再查找或解析版本号：
+ * - 物品拾取延迟优先使用 API（Item#setPickupDelay），API 不可用时回退到预先绑定的
+ *   MethodHandle（CraftEntity#getHandle 与 ItemEntity.pickupDelay 的 VarHandle 组合而成）；
+ * - CraftEntity 所在的包取自服务端实现类本身，同时适用于带版本号（1.20.4及以下）与不带版本号（1.20.5+）的包路径。
+ * 句柄保存在静态常量中，JIT 可以内联 invokeExact。
+ */
+public final class NmsAccess {
+
+    // 旧版本ItemEntity.pickupDelay字段的混淆名候选（按版本排序）
+    private static final String[] PICKUP_DELAY_FIELDS = {
+            "pickupDelay",   // 未混淆（Mojang映射的Paper 1.20.5+、开发环境）
+            "bK",            // 1.17 ~ 1.19.4 (yarn/mojang 混淆名称)
+            "c",             // 1.20.0 ~ 1.20.4
+            "d",             // 1.20.5+ （观察到的部分版本）
+            "e"              // 预防未来变化的候选
+    };
+
+    /**
+     * 设置拾取延迟使用的方式
+     */
+    public enum PickupDelayPath {
+        API("API (Item#setPickupDelay)"),
+        HANDLE("MethodHandle (ItemEntity.pickupDelay)"),
+        NONE("不可用");
+
+        private final String displayName;
+
+        PickupDelayPath(String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+    }
+
+    private static Logger logger = Bukkit.getLogger();
+    private static volatile PickupDelayPath pickupDelayPath; // 探测前为null
+    private static String handleFailure;                     // 句柄解析失败的原因（用于日志）
+
+    private NmsAccess() {
+    }
+
+    /**
+     * 预先绑定的句柄（首次访问时解析，解析失败为null）
+     */
+    private static final class Handles {
+        // (Entity) -> NMS实体
+        static final MethodHandle GET_HANDLE = resolveGetHandle();
+        // (Entity, int) -> void：设置ItemEntity.pickupDelay
+        static final MethodHandle SET_PICKUP_DELAY = resolvePickupDelaySetter(GET_HANDLE);
+    }
+
+    /**
+     * 探测可用的访问方式并记录到日志（插件启用时调用，重复调用只探测一次）
+     */
+    public static synchronized void probe(Logger pluginLogger) {
+        if (pickupDelayPath != null) return;
+        logger = pluginLogger;
+
+        PickupDelayPath path;
+        if (hasPickupDelayApi()) {
+            path = PickupDelayPath.API;
+        } else if (Handles.SET_PICKUP_DELAY != null) {
+            path = PickupDelayPath.HANDLE;
+        } else {
+            path = PickupDelayPath.NONE;
+        }
+        pickupDelayPath = path;
+
+        if (path == PickupDelayPath.NONE) {
+            logger.warning("无法设置物品拾取延迟，原版拾取不会被禁用: " + handleFailure);
+        } else {
+            logger.info("物品拾取延迟: " + path.getDisplayName());
+        }
+        if (Handles.GET_HANDLE == null) {
+            logger.warning("无法获取 CraftEntity#getHandle，拾取动画不可用: " + handleFailure);
+        }
+    }
+
+    /**
+     * 当前设置拾取延迟使用的方式（用于状态显示）
+     */
+    public static PickupDelayPath getPickupDelayPath() {
+        ensureProbed();
+        return pickupDelayPath;
+    }
+
+    /**
+     * 设置物品的拾取延迟
+     * @param ticks 拾取延迟（单位：ticks）
+     * @return 是否设置成功
+     */
+    public static boolean setPickupDelay(Item item, int ticks) {
+        ensureProbed();
+        if (pickupDelayPath == PickupDelayPath.API) {
+            try {
+                item.setPickupDelay(ticks);
+                return true;
+            } catch (UnsupportedOperationException | AbstractMethodError e) {
+                // 服务端未实现该 API：改用句柄，之后不再尝试
+                pickupDelayPath = Handles.SET_PICKUP_DELAY != null ? PickupDelayPath.HANDLE : PickupDelayPath.NONE;
+                logger.warning("Item#setPickupDelay 不可用，物品拾取延迟改用: " + pickupDelayPath.getDisplayName());
+            }
+        }
+        if (pickupDelayPath != PickupDelayPath.HANDLE) return false;
+        try {
+            Handles.SET_PICKUP_DELAY.invokeExact((Entity) item, ticks);
+            return true;
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 获取实体的NMS对象
+     * @throws IllegalStateException 当前服务端无法获取
+     */
+    public static Object getHandle(Entity entity) throws Exception {
+        MethodHandle handle = Handles.GET_HANDLE;
+        if (handle == null) {
+            throw new IllegalStateException("CraftEntity#getHandle unavailable: " + handleFailure);
+        }
+        try {
+            return (Object) handle.invokeExact(entity);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    private static void ensureProbed() {
+        if (pickupDelayPath == null) {
+            probe(logger);
+        }
+    }
+
+    private static boolean hasPickupDelayApi() {
+        try {
+            Item.class.getMethod("setPickupDelay", int.class);
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * CraftBukkit实现类所在的包（例如 org.bukkit.craftbukkit 或 org.bukkit.craftbukkit.v1_20_R3）
+     */
+    private static String craftPackage() {
+        return Bukkit.getServer().getClass().getPackage().getName();
+    }
+
+    private static MethodHandle resolveGetHandle() {
+        try {
+            Class<?> craftEntityClass = Class.forName(craftPackage() + ".entity.CraftEntity");
+            return MethodHandles.publicLookup()
+                    .unreflect(craftEntityClass.getMethod("getHandle"))
+                    .asType(MethodType.methodType(Object.class, Entity.class));
+        } catch (Exception e) {
+            handleFailure = e.toString();
+            return null;
+        }
+    }
+
+    private static MethodHandle resolvePickupDelaySetter(MethodHandle getHandle) {
+        if (getHandle == null) return null;
+        try {
+            // CraftItem#getHandle 的返回类型就是NMS物品实体类，无需按版本猜测类名
+            Class<?> nmsItemClass = Class.forName(craftPackage() + ".entity.CraftItem")
+                    .getMethod("getHandle").getReturnType();
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(nmsItemClass, MethodHandles.lookup());
+
+            for (String name : PICKUP_DELAY_FIELDS) {
+                Field field;
+                try {
+                    field = nmsItemClass.getDeclaredField(name);
+                } catch (NoSuchFieldException ignored) {
+                    continue; // 尝试下一个候选字段名
+                }
+                // 验证字段类型为int（确保找到正确的字段）
+                if (field.getType() != int.class) continue;
+
+                VarHandle delay = lookup.findVarHandle(nmsItemClass, name, int.class);
+                MethodHandle setter = delay.toMethodHandle(VarHandle.AccessMode.SET)
+                        .asType(MethodType.methodType(void.class, Object.class, int.class));
+                // (Entity, int)：先取NMS对象再写字段
+                return MethodHandles.filterArguments(setter, 0, getHandle);
+            }
+            handleFailure = "Could not find pickupDelay field in " + nmsItemClass.getName();
+        } catch (Exception e) {
+            handleFailure = e.toString();
+        }
+        return null;
+    }
+}
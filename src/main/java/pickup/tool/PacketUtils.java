@@ -3,15 +3,19 @@ package pickup.tool;
 import org.bukkit.Bukkit;
 import org.bukkit.entity.Entity;
 import org.bukkit.entity.Player;
-import org.bukkit.plugin.Plugin;
 
-import java.lang.reflect.Constructor;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * 数据包工具类 - 用于发送拾取动画数据包
- * 使用反射处理不同Minecraft版本的API差异
+ * 使用反射处理不同Minecraft版本的API差异，查找结果转换为 MethodHandle 缓存，之后每次调用不再反射；
+ * 实体的NMS对象经由 {@link NmsAccess} 获取
  */
 public final class PacketUtils {
     // 获取服务器版本字符串（例如："org.bukkit.craftbukkit.v1_20_R4"）
@@ -29,110 +33,28 @@ public final class PacketUtils {
     private static final boolean IS_1_17_PLUS = IS_NEW_CRAFTBUKKIT ||
             VERSION.compareTo("org.bukkit.craftbukkit.v1_17_R1") >= 0;
 
-    // 缓存反射对象，避免重复查找提高性能（使用volatile保证多线程可见性）
-    private static volatile Method CACHED_GET_HANDLE = null;        // gethandle方法
-    private static volatile Method CACHED_GET_ID = null;            // getid方法
-    private static volatile Constructor<?> CACHED_PACKET_CONSTRUCTOR = null; // 数据包构造器
-    private static volatile Field CACHED_CONNECTION_FIELD = null;   // 玩家连接字段
+    // 缓存句柄，避免重复查找提高性能（使用volatile保证多线程可见性）
+    private static volatile MethodHandle CACHED_PACKET_CONSTRUCTOR = null; // 数据包构造器 (int, int, int) -> Object
+    private static volatile MethodHandle CACHED_CONNECTION_GETTER = null;  // 玩家连接字段 (Object) -> Object
+    private static volatile MethodHandle CACHED_SEND_METHOD = null;        // 连接的发送方法 (Object, Object) -> void
+    private static volatile MethodHandle CACHED_BUNDLE_CONSTRUCTOR = null; // bundle数据包构造器（1.19.4+）(Iterable) -> Object
+    private static volatile boolean BUNDLE_RESOLVED = false;        // 是否已查找过bundle数据包
+
+    // 单个bundle最多包含的数据包数量（客户端限制）
+    private static final int MAX_BUNDLE_SIZE = 4096;
 
     // 私有构造函数，防止实例化
     private PacketUtils() {}
 
     /**
-     * 发送拾取动画数据包给指定玩家
-     * 显示一个实体被另一个实体拾取的动画效果
-     *
-     * @param plugin 插件实例（用于日志记录）
-     * @param viewer 观看者（接收数据包的玩家）
-     * @param collectedItem 被拾取的物品实体
-     * @param collectorEntityId 拾取者的实体ID（-1表示未知，0表示由服务器拾取）
-     * @param amount 拾取数量（用于显示动画效果）
-     */
-    public static void sendPickupAnimation(Plugin plugin, Player viewer, Entity collectedItem, int collectorEntityId, int amount) {
-        // 参数检查：确保实体有效
-        if (collectedItem == null || collectedItem.isDead()) {
-            return;
-        }
-
-        try {
-            // 获取被拾取实体的NMS（Net Minecraft Server）对象
-            Object nmsItem = getHandle(collectedItem);
-            if (nmsItem == null) return;
-
-            // 获取被拾取实体的id
-            int collectedId = getEntityId(nmsItem);
-
-            // 创建拾取动画数据包
-            Object packet = createCollectPacket(collectedId, collectorEntityId, amount);
-
-            // 获取观看者的nms对象
-            Object nmsViewer = getHandle(viewer);
-            if (nmsViewer == null) return;
-
-            // 获取玩家的网络连接对象
-            Object connection = getPlayerConnection(nmsViewer);
-
-            // 发送数据包给玩家
-            sendPacket(connection, packet);
-
-        } catch (Exception e) {
-            // 记录错误日志，但不中断程序执行
-            plugin.getLogger().log(java.util.logging.Level.WARNING,
-                    "Failed to send pickup animation to " + viewer.getName(), e);
-        }
-    }
-
-    /**
-     * 通过反射获取craftbukkit实体的nms句柄
+     * 获取craftbukkit实体的nms句柄
      *
      * @param entity CraftBukkit实体对象
      * @return NMS实体对象
-     * @throws Exception 反射异常
+     * @throws Exception 当前服务端无法获取
      */
     private static Object getHandle(Entity entity) throws Exception {
-        // 双重检查锁确保线程安全且只初始化一次
-        if (CACHED_GET_HANDLE == null) {
-            synchronized (PacketUtils.class) {
-                if (CACHED_GET_HANDLE == null) {
-                    Class<?> craftEntityClass;
-
-                    // 根据版本选择正确的类路径
-                    if (IS_NEW_CRAFTBUKKIT) {
-                        // 1.20.5+版本：使用新的包结构
-                        craftEntityClass = Class.forName("org.bukkit.craftbukkit.entity.CraftEntity");
-                    } else {
-                        // 1.20.4及以下版本：使用版本化包路径
-                        craftEntityClass = Class.forName(VERSION + ".entity.CraftEntity");
-                    }
-
-                    // 获取gethandle方法
-                    CACHED_GET_HANDLE = craftEntityClass.getMethod("getHandle");
-                }
-            }
-        }
-        // 调用缓存的gethandle方法
-        return CACHED_GET_HANDLE.invoke(entity);
-    }
-
-    /**
-     * 获取nms实体的id
-     *
-     * @param nmsEntity NMS实体对象
-     * @return oxeID
-     * @throws Exception 反射异常
-     */
-    private static int getEntityId(Object nmsEntity) throws Exception {
-        // 双重检查锁确保线程安全且只初始化一次
-        if (CACHED_GET_ID == null) {
-            synchronized (PacketUtils.class) {
-                if (CACHED_GET_ID == null) {
-                    // OPENNMSExegetics
-                    CACHED_GET_ID = nmsEntity.getClass().getMethod("getId");
-                }
-            }
-        }
-        // 调用缓存的getid方法
-        return (int) CACHED_GET_ID.invoke(nmsEntity);
+        return NmsAccess.getHandle(entity);
     }
 
     /**
@@ -161,12 +83,18 @@ public final class PacketUtils {
                     }
 
                     // 获取数据包的构造函数 (int collectedId, int collectorId, int count)
-                    CACHED_PACKET_CONSTRUCTOR = packetClass.getConstructor(int.class, int.class, int.class);
+                    CACHED_PACKET_CONSTRUCTOR = MethodHandles.publicLookup()
+                            .unreflectConstructor(packetClass.getConstructor(int.class, int.class, int.class))
+                            .asType(MethodType.methodType(Object.class, int.class, int.class, int.class));
                 }
             }
         }
         // 使用缓存的构造函数创建数据包实例
-        return CACHED_PACKET_CONSTRUCTOR.newInstance(collectedId, collectorId, count);
+        try {
+            return (Object) CACHED_PACKET_CONSTRUCTOR.invokeExact(collectedId, collectorId, count);
+        } catch (Throwable t) {
+            throw asException(t);
+        }
     }
 
     /**
@@ -178,9 +106,9 @@ public final class PacketUtils {
      */
     private static Object getPlayerConnection(Object nmsPlayer) throws Exception {
         // 双重检查锁确保线程安全且只初始化一次
-        if (CACHED_CONNECTION_FIELD == null) {
+        if (CACHED_CONNECTION_GETTER == null) {
             synchronized (PacketUtils.class) {
-                if (CACHED_CONNECTION_FIELD == null) {
+                if (CACHED_CONNECTION_GETTER == null) {
                     Class<?> playerClass = nmsPlayer.getClass();
                     Field connectionField = null;
 
@@ -205,13 +133,19 @@ public final class PacketUtils {
                         throw new RuntimeException("Failed to find PlayerConnection field in " + playerClass.getName());
                     }
 
-                    // 缓存找到的字段
-                    CACHED_CONNECTION_FIELD = connectionField;
+                    // 缓存找到的字段（已设置可访问，转换为getter句柄）
+                    CACHED_CONNECTION_GETTER = MethodHandles.lookup()
+                            .unreflectGetter(connectionField)
+                            .asType(MethodType.methodType(Object.class, Object.class));
                 }
             }
         }
-        // 使用缓存的字段获取连接对象
-        return CACHED_CONNECTION_FIELD.get(nmsPlayer);
+        // 使用缓存的句柄获取连接对象
+        try {
+            return (Object) CACHED_CONNECTION_GETTER.invokeExact(nmsPlayer);
+        } catch (Throwable t) {
+            throw asException(t);
+        }
     }
 
     /**
@@ -222,49 +156,117 @@ public final class PacketUtils {
      * @throws Exception 反射异常
      */
     private static void sendPacket(Object connection, Object packet) throws Exception {
-        Method sendMethod;
+        // 双重检查锁确保线程安全且只初始化一次
+        if (CACHED_SEND_METHOD == null) {
+            synchronized (PacketUtils.class) {
+                if (CACHED_SEND_METHOD == null) {
+                    Method sendMethod;
+                    // 根据版本选择正确的发送方法
+                    if (IS_1_17_PLUS) {
+                        // 1.17+版本：方法名为"send"，参数为Packet类
+                        sendMethod = connection.getClass().getMethod("send",
+                                Class.forName("net.minecraft.network.protocol.Packet"));
+                    } else {
+                        // 1.16.5及以下版本：方法名为"sendPacket"，参数为Packet类
+                        sendMethod = connection.getClass().getMethod("sendPacket",
+                                Class.forName(VERSION + ".Packet"));
+                    }
+                    CACHED_SEND_METHOD = MethodHandles.publicLookup()
+                            .unreflect(sendMethod)
+                            .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                }
+            }
+        }
 
-        // 根据版本选择正确的发送方法
-        if (IS_1_17_PLUS) {
-            // 1.17+版本：方法名为"send"，参数为Packet类
-            sendMethod = connection.getClass().getMethod("send",
-                    Class.forName("net.minecraft.network.protocol.Packet"));
-        } else {
-            // 1.16.5及以下版本：方法名为"sendPacket"，参数为Packet类
-            sendMethod = connection.getClass().getMethod("sendPacket",
-                    Class.forName(VERSION + ".Packet"));
+        // 调用缓存的发送方法
+        try {
+            CACHED_SEND_METHOD.invokeExact(connection, packet);
+        } catch (Throwable t) {
+            throw asException(t);
         }
+    }
 
-        // 调用发送方法
-        sendMethod.invoke(connection, packet);
+    /**
+     * 获取bundle数据包的构造函数
+     *
+     * @return 构造函数，服务端版本不支持bundle（1.19.4以前）时返回null
+     */
+    private static MethodHandle getBundleConstructor() {
+        if (!BUNDLE_RESOLVED) {
+            synchronized (PacketUtils.class) {
+                if (!BUNDLE_RESOLVED) {
+                    try {
+                        // ClientboundBundlePacket(Iterable<Packet<? super ClientGamePacketListener>>)
+                        Class<?> bundleClass = Class.forName("net.minecraft.network.protocol.game.ClientboundBundlePacket");
+                        CACHED_BUNDLE_CONSTRUCTOR = MethodHandles.publicLookup()
+                                .unreflectConstructor(bundleClass.getConstructor(Iterable.class))
+                                .asType(MethodType.methodType(Object.class, Iterable.class));
+                    } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException e) {
+                        // 旧版本没有bundle数据包，逐个发送
+                        CACHED_BUNDLE_CONSTRUCTOR = null;
+                    }
+                    BUNDLE_RESOLVED = true;
+                }
+            }
+        }
+        return CACHED_BUNDLE_CONSTRUCTOR;
     }
 
     /**
-     * 发送拾取动画数据包（简化版）
-     * 自动获取拾取者的实体ID
+     * 创建拾取动画数据包（可发送给多个观看者）
      *
-     * @param plugin 插件实例
-     * @param collector 拾取者玩家
-     * @param collectedItem 被拾取的物品
+     * @param collectedId 被拾取实体的id（与 Entity#getEntityId 相同）
+     * @param collectorId 拾取者实体的id
      * @param amount 拾取数量
+     * @return 数据包对象
+     * @throws Exception 反射异常
+     */
+    public static Object createTakeItemPacket(int collectedId, int collectorId, int amount) throws Exception {
+        return createCollectPacket(collectedId, collectorId, amount);
+    }
+
+    /**
+     * 把多个数据包发送给玩家
+     * 多于一个时合并为bundle数据包（客户端在同一帧内处理），服务端不支持bundle时逐个发送
+     *
+     * @param viewer 接收数据包的玩家
+     * @param packets 数据包列表（发送后调用方可以复用该列表）
+     * @throws Exception 反射异常
      */
-    public static void sendPickupAnimation(Plugin plugin, Player collector, Entity collectedItem, int amount) {
-        // 参数检查
-        if (collector == null || collectedItem == null || collectedItem.isDead()) {
+    public static void sendPackets(Player viewer, List<Object> packets) throws Exception {
+        int size = packets.size();
+        if (size == 0) return;
+
+        Object nmsViewer = getHandle(viewer);
+        if (nmsViewer == null) return;
+        Object connection = getPlayerConnection(nmsViewer);
+
+        MethodHandle bundle = size > 1 ? getBundleConstructor() : null;
+        if (bundle == null) {
+            for (int i = 0; i < size; i++) {
+                sendPacket(connection, packets.get(i));
+            }
             return;
         }
-
-        try {
-            // 获取拾取者的nms对象和实体id
-            Object nmsCollector = getHandle(collector);
-            int collectorId = getEntityId(nmsCollector);
-
-            // 调用完整版方法发送数据包
-            sendPickupAnimation(plugin, collector, collectedItem, collectorId, amount);
-        } catch (Exception e) {
-            // 记录错误日志
-            plugin.getLogger().log(java.util.logging.Level.WARNING,
-                    "Failed to send pickup animation (auto ID)", e);
+        for (int from = 0; from < size; from += MAX_BUNDLE_SIZE) {
+            int to = Math.min(size, from + MAX_BUNDLE_SIZE);
+            // bundle数据包直接持有传入的列表，必须复制
+            Object packet;
+            try {
+                packet = (Object) bundle.invokeExact((Iterable<?>) new ArrayList<>(packets.subList(from, to)));
+            } catch (Throwable t) {
+                throw asException(t);
+            }
+            sendPacket(connection, packet);
         }
     }
+
+    /**
+     * 句柄调用抛出的异常：Error 直接抛出，其余转换为 Exception
+     */
+    private static Exception asException(Throwable t) {
+        if (t instanceof Error error) throw error;
+        if (t instanceof Exception e) return e;
+        return new RuntimeException(t);
+    }
 }
\ No newline at end of file
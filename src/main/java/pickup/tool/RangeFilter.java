@@ -0,0 +1,71 @@
+package pickup.tool;
+
+/**
+ * 批量距离过滤：对平行存放的坐标数组（结构数组）一次检查一段候选点，返回命中位掩码。
+ * 默认实现逐个标量比较；服务器以 --add-modules jdk.incubator.vector 启动时改用 {@code VectorRangeFilter}，
+ * 每条指令同时比较 4 个（AVX2）或 8 个（AVX-512）候选点。
+ * 两种实现的运算顺序相同（dx*dx + dy*dy + dz*dz，不使用 FMA），结果逐位一致。
+ * 实现无状态，可在嵌套查询中重入。
+ */
+public class RangeFilter {
+
+    /** 单次调用最多检查的候选点数量（掩码位数） */
+    public static final int BLOCK = 64;
+
+    // Vector API 实现的类名（单独编译，模块不可用时加载失败）
+    private static final String VECTOR_IMPL = "pickup.tool.VectorRangeFilter";
+
+    private static final RangeFilter INSTANCE = load();
+
+    protected RangeFilter() {
+    }
+
+    /**
+     * 当前使用的实现（类加载时确定）
+     */
+    public static RangeFilter get() {
+        return INSTANCE;
+    }
+
+    private static RangeFilter load() {
+        try {
+            return (RangeFilter) Class.forName(VECTOR_IMPL).getDeclaredConstructor().newInstance();
+        } catch (Throwable ignored) {
+            // 未启用 jdk.incubator.vector 模块（NoClassDefFoundError 等），使用标量实现
+            return new RangeFilter();
+        }
+    }
+
+    /**
+     * 实现名称（用于状态显示）
+     */
+    public String getName() {
+        return "scalar";
+    }
+
+    /**
+     * 检查 [from, from + count) 范围内的候选点是否在查询球内
+     * @param count 候选点数量，不超过 {@link #BLOCK}
+     * @return 命中位掩码，第 i 位对应下标 from + i
+     */
+    public long mask(double[] xs, double[] ys, double[] zs, int from, int count,
+                     double cx, double cy, double cz, double rangeSq) {
+        return scalarMask(xs, ys, zs, from, 0, count, cx, cy, cz, rangeSq);
+    }
+
+    /**
+     * 标量比较 [from + start, from + count)，命中位从 start 开始（供向量实现处理尾部）
+     */
+    protected static long scalarMask(double[] xs, double[] ys, double[] zs, int from, int start, int count,
+                                     double cx, double cy, double cz, double rangeSq) {
+        long mask = 0;
+        for (int i = start; i < count; i++) {
+            int k = from + i;
+            double dx = xs[k] - cx, dy = ys[k] - cy, dz = zs[k] - cz;
+            if (dx * dx + dy * dy + dz * dz <= rangeSq) {
+                mask |= 1L << i;
+            }
+        }
+        return mask;
+    }
+}
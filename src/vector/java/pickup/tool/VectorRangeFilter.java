@@ -0,0 +1,44 @@
+package pickup.tool;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * 基于 Java Vector API（jdk.incubator.vector）的批量距离过滤
+ * 按平台首选宽度（AVX2 为 4 个 double，AVX-512 为 8 个）一次比较多个候选点，比较结果直接转换为位掩码；
+ * 不足一个向量宽度的尾部交给标量比较。
+ * 只通过 {@link RangeFilter#get()} 反射加载，服务器未启用该模块时不会被引用。
+ */
+final class VectorRangeFilter extends RangeFilter {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    VectorRangeFilter() {
+    }
+
+    @Override
+    public String getName() {
+        return "vector-" + SPECIES.length() + "x64";
+    }
+
+    @Override
+    public long mask(double[] xs, double[] ys, double[] zs, int from, int count,
+                     double cx, double cy, double cz, double rangeSq) {
+        int lanes = SPECIES.length();
+        int bound = SPECIES.loopBound(count);
+        long mask = 0;
+        int i = 0;
+        for (; i < bound; i += lanes) {
+            DoubleVector dx = DoubleVector.fromArray(SPECIES, xs, from + i).sub(cx);
+            DoubleVector dy = DoubleVector.fromArray(SPECIES, ys, from + i).sub(cy);
+            DoubleVector dz = DoubleVector.fromArray(SPECIES, zs, from + i).sub(cz);
+            DoubleVector distSq = dx.mul(dx).add(dy.mul(dy)).add(dz.mul(dz));
+            mask |= distSq.compare(VectorOperators.LE, rangeSq).toLong() << i;
+        }
+        if (i < count) {
+            mask |= scalarMask(xs, ys, zs, from, i, count, cx, cy, cz, rangeSq);
+        }
+        return mask;
+    }
+}